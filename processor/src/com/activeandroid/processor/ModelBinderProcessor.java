@@ -0,0 +1,526 @@
+package com.activeandroid.processor;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@code <ModelClass>$$ModelBinder} for every concrete model so that
+ * {@code Model.toContentValues()} and {@code Model.loadFromCursor()} can move column
+ * values without reflection. Models whose columns can't be reached from generated
+ * code (private or final fields, inaccessible classes) are skipped and keep using
+ * reflection at runtime.
+ */
+@SupportedAnnotationTypes("*")
+public final class ModelBinderProcessor extends AbstractProcessor {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final String MODEL = "com.activeandroid.Model";
+	private static final String MODEL_BINDER = "com.activeandroid.ModelBinder";
+	private static final String REF = "com.activeandroid.Ref";
+	private static final String COLUMN = "com.activeandroid.annotation.Column";
+	private static final String SUFFIX = "$$ModelBinder";
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// OVERRIDEN METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		final TypeElement model = processingEnv.getElementUtils().getTypeElement(MODEL);
+		if (model == null) {
+			return false;
+		}
+
+		for (Element element : roundEnv.getRootElements()) {
+			processElement(element, model);
+		}
+
+		return false;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private void processElement(Element element, TypeElement model) {
+		if (!element.getKind().isClass() || element.getKind() == ElementKind.ENUM) {
+			return;
+		}
+
+		final TypeElement type = (TypeElement) element;
+		if (isConcreteModel(type, model)) {
+			List<ColumnField> columns = collectColumns(type, model);
+			if (columns != null) {
+				writeBinder(type, columns);
+			}
+		}
+
+		for (Element enclosed : type.getEnclosedElements()) {
+			processElement(enclosed, model);
+		}
+	}
+
+	private boolean isConcreteModel(TypeElement type, TypeElement model) {
+		final Types types = processingEnv.getTypeUtils();
+
+		return !type.getModifiers().contains(Modifier.ABSTRACT)
+				&& !type.equals(model)
+				&& types.isSubtype(types.erasure(type.asType()), types.erasure(model.asType()));
+	}
+
+	private List<ColumnField> collectColumns(TypeElement type, TypeElement model) {
+		final Elements elements = processingEnv.getElementUtils();
+		final List<ColumnField> columns = new ArrayList<ColumnField>();
+		final PackageElement pkg = elements.getPackageOf(type);
+
+		if (!isReachable(type, pkg)) {
+			skip(type, "class is not accessible from its package");
+			return null;
+		}
+
+		TypeElement current = type;
+		while (current != null && !current.equals(model)) {
+			for (Element enclosed : current.getEnclosedElements()) {
+				if (enclosed.getKind() != ElementKind.FIELD) {
+					continue;
+				}
+
+				final AnnotationMirror column = getColumnAnnotation(enclosed);
+				if (column == null) {
+					continue;
+				}
+
+				final Set<Modifier> modifiers = enclosed.getModifiers();
+				if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)
+						|| modifiers.contains(Modifier.STATIC)) {
+					skip(type, "column " + enclosed.getSimpleName() + " is private, final or static");
+					return null;
+				}
+
+				if (current != type && !isReachable(current, pkg)) {
+					skip(type, "class " + current.getQualifiedName() + " is not accessible");
+					return null;
+				}
+
+				if (!modifiers.contains(Modifier.PUBLIC) && !elements.getPackageOf(current).equals(pkg)) {
+					skip(type, "column " + enclosed.getSimpleName() + " is not visible from " + pkg.getQualifiedName());
+					return null;
+				}
+
+				if (kindOf(enclosed.asType()) == ValueKind.REF && refTarget(enclosed.asType()) == null) {
+					skip(type, "column " + enclosed.getSimpleName() + " is not a Ref to a concrete model type");
+					return null;
+				}
+
+				String name = getAnnotationValue(column, "name", "");
+				if (name.length() == 0) {
+					name = enclosed.getSimpleName().toString();
+				}
+
+				columns.add(new ColumnField((VariableElement) enclosed, current, name,
+						getAnnotationValue(column, "readOnly", Boolean.FALSE)));
+			}
+
+			final TypeMirror superclass = current.getSuperclass();
+			current = superclass.getKind() == TypeKind.DECLARED
+					? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+		}
+
+		return columns;
+	}
+
+	private boolean isReachable(TypeElement type, PackageElement pkg) {
+		final Elements elements = processingEnv.getElementUtils();
+
+		for (Element e = type; e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+			final Set<Modifier> modifiers = e.getModifiers();
+			if (modifiers.contains(Modifier.PRIVATE)) {
+				return false;
+			}
+			if (!modifiers.contains(Modifier.PUBLIC) && !elements.getPackageOf(e).equals(pkg)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private AnnotationMirror getColumnAnnotation(Element element) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			final TypeElement annotation = (TypeElement) mirror.getAnnotationType().asElement();
+			if (annotation.getQualifiedName().contentEquals(COLUMN)) {
+				return mirror;
+			}
+		}
+
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T getAnnotationValue(AnnotationMirror mirror, String key, T defaultValue) {
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+				: mirror.getElementValues().entrySet()) {
+			if (entry.getKey().getSimpleName().contentEquals(key)) {
+				return (T) entry.getValue().getValue();
+			}
+		}
+
+		return defaultValue;
+	}
+
+	private void skip(TypeElement type, String reason) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+				"ActiveAndroid: no ModelBinder for " + type.getQualifiedName() + " (" + reason
+						+ "), falling back to reflection.", type);
+	}
+
+	private void writeBinder(TypeElement type, List<ColumnField> columns) {
+		final Elements elements = processingEnv.getElementUtils();
+		final String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+		final String binaryName = elements.getBinaryName(type).toString();
+		final String binderName = binaryName.substring(binaryName.lastIndexOf('.') + 1) + SUFFIX;
+		final String modelName = erasedName(type.asType());
+
+		try {
+			final PrintWriter out = new PrintWriter(processingEnv.getFiler()
+					.createSourceFile(packageName.length() > 0 ? packageName + "." + binderName : binderName, type)
+					.openWriter());
+
+			if (packageName.length() > 0) {
+				out.println("package " + packageName + ";");
+				out.println();
+			}
+			out.println("// Generated by " + getClass().getName() + ". Do not edit.");
+			out.println("@SuppressWarnings(\"unchecked\")");
+			out.println("public final class " + binderName + " extends " + MODEL_BINDER + "<" + modelName + "> {");
+
+			out.println("\t@Override");
+			out.println("\tpublic void bind(" + modelName + " model, android.content.ContentValues values) {");
+			for (ColumnField column : columns) {
+				if (!column.readOnly) {
+					out.println("\t\t" + putStatement(column, type));
+				}
+			}
+			out.println("\t}");
+			out.println();
+
+			out.println("\t@Override");
+			out.println("\tpublic void bind(" + modelName + " model, android.database.sqlite.SQLiteStatement statement, int[] bindIndices) {");
+			out.println("\t\tint index;");
+			for (int i = 0; i < columns.size(); i++) {
+				final ColumnField column = columns.get(i);
+				out.println();
+				out.println("\t\tindex = bindIndices[" + (i + 1) + "];");
+				out.println("\t\tif (index > 0) {");
+				out.println("\t\t\t" + bindStatement(column, type));
+				out.println("\t\t}");
+			}
+			out.println("\t}");
+			out.println();
+
+			out.println("\t@Override");
+			out.println("\tpublic String[] getColumnNames() {");
+			out.println("\t\treturn new String[] {");
+			for (ColumnField column : columns) {
+				out.println("\t\t\t" + literal(column.name) + ",");
+			}
+			out.println("\t\t};");
+			out.println("\t}");
+			out.println();
+
+			// columnIndices[0] is Id, which Model reads itself
+			out.println("\t@Override");
+			out.println("\tpublic int load(" + modelName + " model, android.database.Cursor cursor, int[] columnIndices) {");
+			out.println("\t\tint sizeOfColumnNotFound = 0;");
+			out.println("\t\tint columnIndex;");
+			for (int i = 0; i < columns.size(); i++) {
+				final ColumnField column = columns.get(i);
+				out.println();
+				out.println("\t\tcolumnIndex = columnIndices[" + (i + 1) + "];");
+				out.println("\t\tif (columnIndex < 0) {");
+				out.println("\t\t\tsizeOfColumnNotFound++;");
+				out.println("\t\t}");
+				out.println("\t\telse if (!cursor.isNull(columnIndex)) {");
+				out.println("\t\t\t" + access(column, type) + " = " + readExpression(column) + ";");
+				out.println("\t\t}");
+			}
+			out.println();
+			out.println("\t\treturn sizeOfColumnNotFound;");
+			out.println("\t}");
+			out.println("}");
+			out.close();
+		}
+		catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"ActiveAndroid: couldn't write " + binderName + ": " + e.getMessage(), type);
+		}
+	}
+
+	private String putStatement(ColumnField column, TypeElement type) {
+		final String name = literal(column.name);
+		final String value = access(column, type);
+		final TypeMirror fieldType = column.field.asType();
+
+		switch (fieldType.getKind()) {
+		case BOOLEAN:
+		case BYTE:
+		case SHORT:
+		case INT:
+		case LONG:
+		case FLOAT:
+		case DOUBLE:
+			return "values.put(" + name + ", " + value + ");";
+		case CHAR:
+			return "values.put(" + name + ", String.valueOf(" + value + "));";
+		default:
+			break;
+		}
+
+		switch (kindOf(fieldType)) {
+		case DIRECT:
+			return "values.put(" + name + ", " + value + ");";
+		case CHARACTER:
+			return "values.put(" + name + ", " + value + " != null ? " + value + ".toString() : null);";
+		case MODEL:
+		case REF:
+			return "values.put(" + name + ", " + value + " != null ? " + value + ".getId() : null);";
+		case ENUM:
+			return "values.put(" + name + ", " + value + " != null ? " + value + ".name() : null);";
+		default:
+			return "put(values, " + name + ", " + erasedName(fieldType) + ".class, " + value + ");";
+		}
+	}
+
+	private String bindStatement(ColumnField column, TypeElement type) {
+		final String value = access(column, type);
+		final TypeMirror fieldType = column.field.asType();
+
+		switch (fieldType.getKind()) {
+		case BYTE:
+		case SHORT:
+		case INT:
+		case LONG:
+			return "statement.bindLong(index, " + value + ");";
+		case FLOAT:
+		case DOUBLE:
+			return "statement.bindDouble(index, " + value + ");";
+		case BOOLEAN:
+			return "statement.bindLong(index, " + value + " ? 1 : 0);";
+		case CHAR:
+			return "statement.bindString(index, String.valueOf(" + value + "));";
+		default:
+			break;
+		}
+
+		final String erasedName = erasedName(fieldType);
+		switch (kindOf(fieldType)) {
+		case DIRECT:
+			if (erasedName.equals("java.lang.String")) return "bindString(statement, index, " + value + ");";
+			if (erasedName.equals("byte[]")) return "bindBlob(statement, index, " + value + ");";
+			if (erasedName.equals("java.lang.Boolean")) return "bindBoolean(statement, index, " + value + ");";
+			if (erasedName.equals("java.lang.Float") || erasedName.equals("java.lang.Double")) {
+				return "bindDouble(statement, index, " + value + ");";
+			}
+			return "bindLong(statement, index, " + value + ");";
+		case CHARACTER:
+			return "bindString(statement, index, " + value + ");";
+		case MODEL:
+			return "bindModel(statement, index, " + value + ");";
+		case REF:
+			return "bindRef(statement, index, " + value + ");";
+		case ENUM:
+			return "bindEnum(statement, index, " + value + ");";
+		default:
+			return "bind(statement, index, " + erasedName + ".class, " + value + ");";
+		}
+	}
+
+	private String readExpression(ColumnField column) {
+		final TypeMirror fieldType = column.field.asType();
+
+		switch (fieldType.getKind()) {
+		case BOOLEAN:
+			return "cursor.getInt(columnIndex) != 0";
+		case BYTE:
+			return "(byte) cursor.getInt(columnIndex)";
+		case SHORT:
+			return "cursor.getShort(columnIndex)";
+		case INT:
+			return "cursor.getInt(columnIndex)";
+		case LONG:
+			return "cursor.getLong(columnIndex)";
+		case FLOAT:
+			return "cursor.getFloat(columnIndex)";
+		case DOUBLE:
+			return "cursor.getDouble(columnIndex)";
+		case CHAR:
+			return "cursor.getString(columnIndex).charAt(0)";
+		default:
+			break;
+		}
+
+		final String erasedName = erasedName(fieldType);
+		switch (kindOf(fieldType)) {
+		case DIRECT:
+			if (erasedName.equals("java.lang.String")) return "cursor.getString(columnIndex)";
+			if (erasedName.equals("byte[]")) return "cursor.getBlob(columnIndex)";
+			if (erasedName.equals("java.lang.Boolean")) return "cursor.getInt(columnIndex) != 0";
+			if (erasedName.equals("java.lang.Byte")) return "(byte) cursor.getInt(columnIndex)";
+			if (erasedName.equals("java.lang.Short")) return "cursor.getShort(columnIndex)";
+			if (erasedName.equals("java.lang.Integer")) return "cursor.getInt(columnIndex)";
+			if (erasedName.equals("java.lang.Long")) return "cursor.getLong(columnIndex)";
+			if (erasedName.equals("java.lang.Float")) return "cursor.getFloat(columnIndex)";
+			return "cursor.getDouble(columnIndex)";
+		case CHARACTER:
+			return "cursor.getString(columnIndex).charAt(0)";
+		case MODEL:
+			return MODEL + ".load(" + erasedName + ".class, cursor.getLong(columnIndex))";
+		case REF:
+			return REF + ".to(" + refTarget(fieldType) + ".class, cursor.getLong(columnIndex))";
+		case ENUM:
+			return erasedName + ".valueOf(cursor.getString(columnIndex))";
+		default:
+			return "(" + erasedName(fieldType) + ") get(cursor, columnIndex, " + erasedName + ".class)";
+		}
+	}
+
+	// Keep in sync with ModelBinder.isInlined(), which drops the binder of a table
+	// when a TypeSerializer is registered for a type handled inline here
+	private ValueKind kindOf(TypeMirror fieldType) {
+		final Types types = processingEnv.getTypeUtils();
+
+		if (fieldType.getKind() == TypeKind.ARRAY) {
+			return ((ArrayType) fieldType).getComponentType().getKind() == TypeKind.BYTE
+					? ValueKind.DIRECT : ValueKind.SERIALIZED;
+		}
+
+		if (fieldType.getKind() != TypeKind.DECLARED) {
+			return ValueKind.SERIALIZED;
+		}
+
+		final TypeElement element = (TypeElement) ((DeclaredType) fieldType).asElement();
+		final String name = element.getQualifiedName().toString();
+
+		if (name.equals("java.lang.String") || name.equals("java.lang.Boolean") || name.equals("java.lang.Byte")
+				|| name.equals("java.lang.Short") || name.equals("java.lang.Integer") || name.equals("java.lang.Long")
+				|| name.equals("java.lang.Float") || name.equals("java.lang.Double")) {
+			return ValueKind.DIRECT;
+		}
+		if (name.equals("java.lang.Character")) {
+			return ValueKind.CHARACTER;
+		}
+		if (element.getKind() == ElementKind.ENUM) {
+			return ValueKind.ENUM;
+		}
+		if (name.equals(REF)) {
+			return ValueKind.REF;
+		}
+
+		final TypeElement model = processingEnv.getElementUtils().getTypeElement(MODEL);
+		if (types.isSubtype(types.erasure(fieldType), types.erasure(model.asType()))) {
+			return ValueKind.MODEL;
+		}
+
+		return ValueKind.SERIALIZED;
+	}
+
+	/**
+	 * @return the erased name of the model a Ref field points to, or null if the type
+	 *         argument is missing, a wildcard or a type variable
+	 */
+	private String refTarget(TypeMirror fieldType) {
+		final List<? extends TypeMirror> arguments = ((DeclaredType) fieldType).getTypeArguments();
+		if (arguments.size() != 1 || arguments.get(0).getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+
+		return erasedName(arguments.get(0));
+	}
+
+	private String access(ColumnField column, TypeElement type) {
+		if (column.declaringType.equals(type)) {
+			return "model." + column.field.getSimpleName();
+		}
+
+		return "((" + erasedName(processingEnv.getTypeUtils().erasure(column.declaringType.asType())) + ") model)."
+				+ column.field.getSimpleName();
+	}
+
+	private String erasedName(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	private static String literal(String value) {
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private enum ValueKind {
+		DIRECT, CHARACTER, MODEL, REF, ENUM, SERIALIZED
+	}
+
+	private static final class ColumnField {
+		final VariableElement field;
+		final TypeElement declaringType;
+		final String name;
+		final boolean readOnly;
+
+		ColumnField(VariableElement field, TypeElement declaringType, String name, boolean readOnly) {
+			this.field = field;
+			this.declaringType = declaringType;
+			this.name = name;
+			this.readOnly = readOnly;
+		}
+	}
+}
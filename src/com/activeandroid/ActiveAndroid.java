@@ -16,12 +16,29 @@ package com.activeandroid;
  * limitations under the License.
  */
 
+import java.util.concurrent.Callable;
+
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.SystemClock;
 
 import com.activeandroid.util.Log;
+import com.activeandroid.util.SQLiteUtils;
 
 public final class ActiveAndroid {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public static final int MAX_TRANSACTION_RETRIES = 5;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Milliseconds before the first retry of a locked transaction
+	private static final long INITIAL_RETRY_BACKOFF = 20;
 
 	private static boolean sInContentProvider = false;
 
@@ -55,6 +72,13 @@ public final class ActiveAndroid {
 		Cache.clear();
 	}
 
+	/**
+	 * Release cached models, see {@link android.content.ComponentCallbacks2#onTrimMemory}.
+	 */
+	public static void trimMemory(int level) {
+		Cache.trimMemory(level);
+	}
+
 	public static void dispose() {
 		Cache.dispose();
 	}
@@ -67,21 +91,122 @@ public final class ActiveAndroid {
 		return Cache.openDatabase();
 	}
 
+	/**
+	 * Begin a transaction, or a savepoint inside the calling thread's open one. A
+	 * nested transaction ended without {@link #setTransactionSuccessful()} rolls back
+	 * only its own writes; the outer transaction may still commit.
+	 * <p>
+	 * A rollback evicts the rows it touched from the entity cache, but not the
+	 * values from model instances the caller still holds. Models first saved inside
+	 * it keep the id of their rolled back row, reload them or discard them.
+	 */
 	public static void beginTransaction() {
-		Cache.beginTransaction();
-		Cache.openDatabase().beginTransaction();
+		if (!Cache.beginTransaction()) {
+			return;
+		}
+
+		boolean begun = false;
+		try {
+			Cache.openDatabase().beginTransaction();
+			begun = true;
+		}
+		finally {
+			if (!begun) {
+				Cache.endTransaction();
+			}
+		}
 	}
 
 	public static void endTransaction() {
-		Cache.openDatabase().endTransaction();
-		Cache.endTransaction();
+		if (!Cache.isOutermostTransaction()) {
+			Cache.endTransaction();
+			return;
+		}
+
+		boolean ended = false;
+		try {
+			Cache.openDatabase().endTransaction();
+			ended = true;
+		}
+		finally {
+			// Also when the commit failed, or the thread could never begin another one
+			Cache.endTransaction(ended);
+		}
 	}
 
 	public static void setTransactionSuccessful() {
-		Cache.openDatabase().setTransactionSuccessful();
+		if (Cache.isOutermostTransaction()) {
+			Cache.openDatabase().setTransactionSuccessful();
+		}
 		Cache.setTransactionSuccessful();
 	}
 
+	/**
+	 * Run body in a transaction, committed if it returns and rolled back if it throws.
+	 * Inside another transaction body gets a savepoint, see {@link #beginTransaction()}.
+	 * An outermost transaction that can't begin because the database is locked is
+	 * retried up to {@link #MAX_TRANSACTION_RETRIES} times, waiting twice as long
+	 * each time. Body itself runs once: models it saved would keep the ids of rows a
+	 * retry had rolled back, so a lock error it or the commit meets is thrown.
+	 *
+	 * @throws RuntimeException wrapping checked exceptions thrown by body
+	 */
+	public static <V> V runInTransaction(Callable<V> body) {
+		if (Cache.inTransaction()) {
+			return runNested(body);
+		}
+
+		final long start = SystemClock.uptimeMillis();
+		long backoff = INITIAL_RETRY_BACKOFF;
+		int retries = 0;
+		boolean rolledBack = true;
+
+		try {
+			while (true) {
+				try {
+					beginTransaction();
+					break;
+				}
+				catch (SQLiteException e) {
+					if (!SQLiteUtils.isDatabaseLocked(e) || retries == MAX_TRANSACTION_RETRIES) {
+						throw e;
+					}
+
+					Log.w("Database locked, retrying the transaction in " + backoff + " ms");
+					SystemClock.sleep(backoff);
+					backoff *= 2;
+					retries++;
+				}
+			}
+
+			try {
+				final V result = body.call();
+				setTransactionSuccessful();
+				rolledBack = false;
+				return result;
+			}
+			finally {
+				endTransaction();
+			}
+		}
+		catch (RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		finally {
+			Cache.recordTransaction(SystemClock.uptimeMillis() - start, retries, rolledBack);
+		}
+	}
+
+	/**
+	 * @return the counters of {@link #runInTransaction}
+	 */
+	public static TransactionStats getTransactionStats() {
+		return Cache.getTransactionStats();
+	}
+
 	public static boolean inTransaction() {
 		return Cache.openDatabase().inTransaction();
 	}
@@ -117,4 +242,30 @@ public final class ActiveAndroid {
 	public static void yieldTransaction() {
 		Cache.yieldTransaction();
 	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static <V> V runNested(Callable<V> body) {
+		boolean successful = false;
+
+		beginTransaction();
+		try {
+			final V result = body.call();
+			setTransactionSuccessful();
+			successful = true;
+			return result;
+		}
+		catch (RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		finally {
+			endTransaction();
+			Cache.recordTransaction(-1, 0, !successful);
+		}
+	}
 }
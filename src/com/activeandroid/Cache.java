@@ -20,43 +20,83 @@ import java.io.File;
 import java.lang.ref.WeakReference;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
-import android.support.v4.util.LruCache;
-import android.util.SparseArray;
-import android.util.SparseIntArray;
+import android.database.sqlite.SQLiteStatement;
 
+import com.activeandroid.annotation.Table.CachePolicy;
+import com.activeandroid.content.ContentProvider;
 import com.activeandroid.serializer.TypeSerializer;
 import com.activeandroid.util.Log;
 import com.activeandroid.util.SQLiteUtils.Yield;
 
 public final class Cache {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final int MAX_QUERY_STATEMENTS = 32;
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// PRIVATE MEMBERS
 	//////////////////////////////////////////////////////////////////////////////////////
 
-	private static Context sContext;
+	private static volatile Context sContext;
 
-	private static ModelInfo sModelInfo;
-	private static DatabaseHelper sDatabaseHelper;
+	// Immutable once published, so reading it needs no lock
+	private static volatile ModelInfo sModelInfo;
+	private static volatile DatabaseHelper sDatabaseHelper;
 
-	private static LruCache<String, Model> sEntities;
+	private static volatile boolean sEntitiesEnabled = false;
+	private static EntityCache.Budget sBudget;
 
 	private static boolean sIsInitialized = false;
 
-	private static Object yieldTransactionLock = new Object();
-	private static SparseArray<Yield> sYield = new SparseArray<Yield>();
-	private static SparseIntArray sYieldCount = new SparseIntArray();
-	private static SparseIntArray sYieldTransaction = new SparseIntArray();
+	private static final ThreadLocal<TransactionState> sTransactionState = new ThreadLocal<TransactionState>() {
+		@Override
+		protected TransactionState initialValue() {
+			return new TransactionState();
+		}
+	};
+
+	// Release requests of all threads, only waited on through yieldTransactionLock
+	private static final AtomicInteger sReleaseRequests = new AtomicInteger();
+	private static final Object yieldTransactionLock = new Object();
+
+	// Counters of ActiveAndroid.runInTransaction()
+	private static final AtomicLong sTransactionCount = new AtomicLong();
+	private static final AtomicLong sRollbackCount = new AtomicLong();
+	private static final AtomicLong sRetryCount = new AtomicLong();
+	private static final AtomicLong sTransactionTime = new AtomicLong();
+	private static final AtomicLong sMaxTransactionTime = new AtomicLong();
 
 	private static Configuration sConfiguration;
 	private static String sDatabaseName;
 
 	private static Map<String, WeakReference<ReentrantLock>> sModelLocks = new HashMap<String, WeakReference<ReentrantLock>>();
 
+	// Compiled statements of prepared queries by SQL, least recently used first
+	@SuppressWarnings("serial")
+	private static final Map<String, StatementPool> sQueryStatements = new LinkedHashMap<String, StatementPool>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, StatementPool> eldest) {
+			if (size() > MAX_QUERY_STATEMENTS) {
+				eldest.getValue().close();
+				return true;
+			}
+			return false;
+		}
+	};
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -78,20 +118,25 @@ public final class Cache {
 		sDatabaseName = sConfiguration.getDatabaseName();
 
 		sContext = configuration.getContext();
-		sModelInfo = new ModelInfo(configuration);
+		WriteQueue.configure(configuration);
+
+		// Every table gets its own cache region, see Table#cachePolicy()
+		final ModelInfo modelInfo = new ModelInfo(configuration);
+		boolean entitiesEnabled = false;
+		sBudget = configuration.getCacheMaxBytes() > 0 ? new EntityCache.Budget(configuration.getCacheMaxBytes()) : null;
+		for (TableInfo tableInfo : modelInfo.getTableInfos()) {
+			final EntityCache entities = createEntityCache(tableInfo, configuration);
+			tableInfo.setEntityCache(entities);
+			entitiesEnabled |= entities != null;
+		}
+		sModelInfo = modelInfo;
+		sEntitiesEnabled = entitiesEnabled;
 
 		if (canValidDatabase())
 			sDatabaseHelper = new DatabaseHelper(configuration);
 		else
 			reInitNullDatabase();
 
-		// TODO: It would be nice to override sizeOf here and calculate the memory
-		// actually used, however at this point it seems like the reflection
-		// required would be too costly to be of any benefit. We'll just set a max
-		// object size instead.
-		final int cacheSize = configuration.getCacheSize();
-		sEntities = (cacheSize > 0) ? new LruCache<String, Model>(cacheSize) : null;
-
 		openDatabase();
 
 		sIsInitialized = true;
@@ -110,6 +155,7 @@ public final class Cache {
 
 		sConfiguration.setDatabaseName(sDatabaseName);
 
+		closeStatements();
 		if (sDatabaseHelper != null)
 			sDatabaseHelper.close();
 		sDatabaseHelper = new DatabaseHelper(sConfiguration);
@@ -121,6 +167,7 @@ public final class Cache {
 
 		sConfiguration.setDatabaseName(null);
 
+		closeStatements();
 		if (sDatabaseHelper != null)
 			sDatabaseHelper.close();
 		sDatabaseHelper = new DatabaseHelper(sConfiguration);
@@ -147,15 +194,47 @@ public final class Cache {
 	}
 
 	public static synchronized void clear() {
-		if (sEntities == null) return;
-		sEntities.evictAll();
+		if (!sEntitiesEnabled) return;
+		for (TableInfo tableInfo : sModelInfo.getTableInfos()) {
+			if (tableInfo.getEntityCache() != null)
+				tableInfo.getEntityCache().clear();
+		}
 		Log.v("Cache cleared.");
 	}
 
+	/**
+	 * Shrink the entity cache according to a {@link ComponentCallbacks2} trim level.
+	 */
+	public static void trimMemory(int level) {
+		final int keepPercent;
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+				|| level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+			keepPercent = 0;
+		}
+		else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+			keepPercent = 25;
+		}
+		else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+				|| level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+			keepPercent = 50;
+		}
+		else {
+			return;
+		}
+
+		final ModelInfo modelInfo = sModelInfo;
+		if (!sEntitiesEnabled || modelInfo == null) return;
+		for (TableInfo tableInfo : modelInfo.getTableInfos()) {
+			if (tableInfo.getEntityCache() != null)
+				tableInfo.getEntityCache().trim(keepPercent);
+		}
+		Log.v("Cache trimmed to " + keepPercent + "%.");
+	}
+
 	public static synchronized void dispose() {
 		closeDatabase();
 
-		sEntities = null;
+		sEntitiesEnabled = false;
 		sModelInfo = null;
 		sDatabaseHelper = null;
 
@@ -170,10 +249,70 @@ public final class Cache {
 		return sDatabaseHelper.getWritableDatabase();
 	}
 
+	/**
+	 * @return true if the database is open in write-ahead logging mode. Queries then
+	 *         don't wait for other threads' write transactions.
+	 */
+	public static boolean isWriteAheadLogging() {
+		final DatabaseHelper databaseHelper = sDatabaseHelper;
+		return databaseHelper != null && databaseHelper.isWriteAheadLogging();
+	}
+
 	public static synchronized void closeDatabase() {
+		closeStatements();
 		sDatabaseHelper.close();
 	}
 
+	/**
+	 * Check out a compiled statement for sql. Statements of the most recently used
+	 * SQL strings are kept compiled between calls.
+	 */
+	public static SQLiteStatement acquireStatement(String sql) {
+		StatementPool pool;
+		synchronized (sQueryStatements) {
+			pool = sQueryStatements.get(sql);
+			if (pool == null) {
+				pool = new StatementPool(sql);
+				sQueryStatements.put(sql, pool);
+			}
+		}
+
+		return pool.acquire(openDatabase());
+	}
+
+	/**
+	 * Return a statement from {@link #acquireStatement}. Its bindings are cleared.
+	 */
+	public static void releaseStatement(String sql, SQLiteStatement statement) {
+		StatementPool pool;
+		synchronized (sQueryStatements) {
+			pool = sQueryStatements.get(sql);
+		}
+
+		if (pool != null) {
+			pool.release(openDatabase(), statement);
+		}
+		else {
+			statement.close();
+		}
+	}
+
+	private static void closeStatements() {
+		synchronized (sQueryStatements) {
+			for (StatementPool pool : sQueryStatements.values()) {
+				pool.close();
+			}
+			sQueryStatements.clear();
+		}
+
+		if (sModelInfo == null)
+			return;
+
+		for (TableInfo tableInfo : sModelInfo.getTableInfos()) {
+			tableInfo.closeStatements();
+		}
+	}
+
 	// Context access
 
 	public static Context getContext() {
@@ -200,41 +339,50 @@ public final class Cache {
 		return identifier;
 	}
 
-	public static synchronized void addEntity(Model entity) {
-		if (sEntities == null) return;
-		synchronized (sEntities) {
-		sEntities.put(getIdentifier(entity), entity);
-		}
+	// The entity cache locks per segment, these don't take the Cache lock
+
+	public static void addEntity(Model entity) {
+		final EntityCache entities = getEntityCache(entity.getClass());
+		if (entities == null || entity.getId() == null) return;
+		entities.put(entity.getId(), entity);
 	}
 
-	public static synchronized Model getEntity(Class<? extends Model> type, long id) {
-		if (sEntities == null) return null;
-		return sEntities.get(getIdentifier(type, id));
+	public static Model getEntity(Class<? extends Model> type, long id) {
+		final EntityCache entities = getEntityCache(type);
+		if (entities == null) return null;
+		return entities.get(id);
 	}
 
-	public static synchronized void removeEntity(Model entity) {
-		if (sEntities == null) return;
-		synchronized (sEntities) {
-		sEntities.remove(getIdentifier(entity));
-		}
+	public static void removeEntity(Model entity) {
+		final EntityCache entities = getEntityCache(entity.getClass());
+		if (entities == null || entity.getId() == null) return;
+		entities.remove(entity.getId());
 	}
 
+	/**
+	 * @return the counters of the table's cache region, or null if the table isn't
+	 *         cached
+	 */
+	public static CacheStats getStats(Class<? extends Model> type) {
+		final EntityCache entities = getEntityCache(type);
+		return entities != null ? entities.getStats() : null;
+	}
 
-	// Model cache
+	// Model cache, immutable after initialize()
 
-	public static synchronized Collection<TableInfo> getTableInfos() {
+	public static Collection<TableInfo> getTableInfos() {
 		return sModelInfo.getTableInfos();
 	}
 
-	public static synchronized TableInfo getTableInfo(Class<? extends Model> type) {
+	public static TableInfo getTableInfo(Class<? extends Model> type) {
 		return sModelInfo.getTableInfo(type);
 	}
 
-	public static synchronized TypeSerializer getParserForType(Class<?> type) {
+	public static TypeSerializer getParserForType(Class<?> type) {
 		return sModelInfo.getTypeSerializer(type);
 	}
 
-	public static synchronized String getTableName(Class<? extends Model> type) {
+	public static String getTableName(Class<? extends Model> type) {
 		return sModelInfo.getTableInfo(type).getTableName();
 	}
 
@@ -255,94 +403,196 @@ public final class Cache {
 		return lock;
 	}
 
-	public static synchronized void beginTransaction() {
-		final int tid = android.os.Process.myTid();
+	// Transaction nesting is kept per thread and needs no lock
+
+	/**
+	 * Track a transaction begun by {@link ActiveAndroid#beginTransaction()}. Nested
+	 * transactions are savepoints: ending one without success rolls back only what
+	 * was written since it began, drops its change notifications and evicts the
+	 * models it changed from the entity cache.
+	 *
+	 * @return true for the outermost transaction, which the caller must begin on the
+	 *         database
+	 */
+	public static boolean beginTransaction() {
+		final TransactionState state = sTransactionState.get();
+
+		if (state.depth == 0) {
+			state.yield = new Yield().begin();
+			state.pendingChanges = new PendingChanges();
+			state.depth = 1;
+			return true;
+		}
+
+		openDatabase().execSQL("SAVEPOINT " + getSavepointName(state.depth));
+		state.pendingChanges = new PendingChanges(state.pendingChanges);
+		state.depth++;
+		return false;
+	}
+
+	/**
+	 * Roll back or release the innermost savepoint, or finish tracking the outermost
+	 * transaction after the caller ended it on the database.
+	 */
+	public static void endTransaction() {
+		endTransaction(true);
+	}
+
+	/**
+	 * @param ended false if ending the outermost transaction on the database threw,
+	 *        its changes are then dropped instead of notified
+	 */
+	public static void endTransaction(boolean ended) {
+		final TransactionState state = sTransactionState.get();
 
-		final int count = sYieldCount.get(tid);
+		if (state.depth > 1) {
+			state.depth--;
+			endSavepoint(state);
+			return;
+		}
+
+		state.yield.end();
+		state.yield = null;
+		state.depth = 0;
 
-		if (count == 0) {
-			final Yield yield = new Yield();
-			yield.begin();
-			sYield.put(tid, yield);
+		final PendingChanges pendingChanges = state.pendingChanges;
+		state.pendingChanges = null;
+
+		if (pendingChanges == null) {
+			return;
 		}
 
-		sYieldCount.put(tid, count + 1);
+		// The ContentResolver may call into other processes
+		if (ended && pendingChanges.isSuccessful()) {
+			pendingChanges.dispatch();
+		}
+		else {
+			pendingChanges.evict();
+		}
 	}
 
-	public static synchronized void endTransaction() {
-		final int tid = android.os.Process.myTid();
+	public static void setTransactionSuccessful() {
+		final TransactionState state = sTransactionState.get();
 
-		final int count = sYieldCount.get(tid);
+		state.pendingChanges.markSuccessful();
 
-		if (count > 1) {
-			sYieldCount.put(tid, count - 1);
+		if (state.depth > 1)
 			return;
+
+		state.yield.success();
+	}
+
+	/**
+	 * @return true if the calling thread is inside {@link ActiveAndroid#beginTransaction()}
+	 */
+	public static boolean inTransaction() {
+		return sTransactionState.get().depth > 0;
+	}
+
+	/**
+	 * @return true unless the calling thread's innermost transaction is a savepoint
+	 */
+	public static boolean isOutermostTransaction() {
+		return sTransactionState.get().depth <= 1;
+	}
+
+	/**
+	 * Count one {@link ActiveAndroid#runInTransaction} call.
+	 *
+	 * @param millis time spent, or -1 for nested calls, whose time is their outer
+	 *        transaction's
+	 */
+	public static void recordTransaction(long millis, int retries, boolean rolledBack) {
+		sTransactionCount.incrementAndGet();
+		sRetryCount.addAndGet(retries);
+		if (rolledBack) {
+			sRollbackCount.incrementAndGet();
 		}
 
-		final Yield yield = sYield.get(tid);
-		yield.end();
-		sYield.delete(tid);
+		if (millis < 0) {
+			return;
+		}
 
-		sYieldCount.delete(tid);
+		sTransactionTime.addAndGet(millis);
+		long max = sMaxTransactionTime.get();
+		while (millis > max && !sMaxTransactionTime.compareAndSet(max, millis)) {
+			max = sMaxTransactionTime.get();
+		}
 	}
 
-	public static synchronized void setTransactionSuccessful() {
-		final int tid = android.os.Process.myTid();
+	public static TransactionStats getTransactionStats() {
+		return new TransactionStats(sTransactionCount.get(), sRollbackCount.get(), sRetryCount.get(),
+				sTransactionTime.get(), sMaxTransactionTime.get());
+	}
 
-		final int count = sYieldCount.get(tid);
+	/**
+	 * Notify observers of the model's URI, or of the table's when id is null or the
+	 * configuration asks for per table notifications. Inside a transaction begun
+	 * with {@link ActiveAndroid#beginTransaction()} the change is held back and sent
+	 * once, deduplicated, after the outermost transaction commits. It's dropped if
+	 * the transaction rolls back.
+	 */
+	public static void notifyChange(Class<? extends Model> type, Long id) {
+		if (id != null && sConfiguration != null && sConfiguration.isNotifyByTable()) {
+			id = null;
+		}
 
-		if (count > 1)
+		final PendingChanges pendingChanges = sTransactionState.get().pendingChanges;
+		if (pendingChanges != null) {
+			pendingChanges.add(type, id);
 			return;
+		}
 
-		final Yield yield = sYield.get(tid);
-		yield.success();
+		dispatchChange(type, id);
 	}
 
+	/**
+	 * Ask threads holding a transaction to yield it at their next
+	 * {@link #yieldTransaction()}, until {@link #endReleaseTransaction()}.
+	 */
 	public static void beginReleaseTransaction() {
-		synchronized (yieldTransactionLock) {
-			final int tid = android.os.Process.myTid();
-			final int count = sYieldTransaction.get(tid);
-			sYieldTransaction.put(tid, count + 1);
-		}
+		sTransactionState.get().releaseRequests++;
+		sReleaseRequests.incrementAndGet();
 	}
 
 	public static void endReleaseTransaction() {
-		synchronized (yieldTransactionLock) {
-			final int tid = android.os.Process.myTid();
+		sTransactionState.get().releaseRequests--;
 
-			final int count = sYieldTransaction.get(tid);
-			if (count > 1) {
-				sYieldTransaction.put(tid, count - 1);
-				return;
+		// Only a yielded writer waits, and only for the last request to end
+		if (sReleaseRequests.decrementAndGet() == 0) {
+			synchronized (yieldTransactionLock) {
+				yieldTransactionLock.notifyAll();
 			}
-
-			sYieldTransaction.delete(tid);
-			if (sYieldTransaction.size() != 0)
-				return;
-
-			yieldTransactionLock.notifyAll();
 		}
 	}
 
 	public static void yieldTransaction() {
-		SQLiteDatabase db = null;
+		final TransactionState state = sTransactionState.get();
+		final int ownRequests = state.releaseRequests;
 
-		synchronized (yieldTransactionLock) {
-			if (!needYieldTransaction())
-				return;
+		// Nobody but this thread is waiting, which is the common case
+		if (sReleaseRequests.get() - ownRequests <= 0)
+			return;
 
-			db = sDatabaseHelper.getWritableDatabase();
+		// Committing would release the open savepoints
+		if (state.depth > 1)
+			return;
 
-			try {
-				db.setTransactionSuccessful();
-			} finally {
-				db.endTransaction();
-			}
+		final SQLiteDatabase db = sDatabaseHelper.getWritableDatabase();
+
+		try {
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
 
-			while (!canTransaction()) {
-				try {
-					yieldTransactionLock.wait();
-				} catch (Exception e) {
+		if (ownRequests == 0) {
+			synchronized (yieldTransactionLock) {
+				while (sReleaseRequests.get() > 0) {
+					try {
+						yieldTransactionLock.wait();
+					} catch (Exception e) {
+					}
 				}
 			}
 		}
@@ -350,31 +600,175 @@ public final class Cache {
 		db.beginTransaction();
 	}
 
-	private static boolean needYieldTransaction() {
-		synchronized (yieldTransactionLock) {
-			final int size = sYieldTransaction.size();
-			if (size == 0)
-				return false;
+	private static EntityCache createEntityCache(TableInfo tableInfo, Configuration configuration) {
+		final CachePolicy policy = tableInfo.getCachePolicy();
+		if (policy == CachePolicy.NONE) {
+			return null;
+		}
 
-			final int tid = android.os.Process.myTid();
-			if (size == 1 && sYieldTransaction.get(tid) > 0)
-				return false;
+		// Tables without an explicit size share the byte budget if there is one
+		if (policy == CachePolicy.DEFAULT && tableInfo.getCacheSize() < 0 && configuration.getCacheMaxBytes() > 0) {
+			return new EntityCache(tableInfo, sBudget, tableInfo.getCacheTtl());
+		}
 
-			return true;
+		final int cacheSize = tableInfo.getCacheSize() >= 0 ? tableInfo.getCacheSize() : configuration.getCacheSize();
+		if (cacheSize <= 0) {
+			return null;
 		}
+
+		return new EntityCache(cacheSize, policy, tableInfo.getCacheTtl());
 	}
 
-	private static boolean canTransaction() {
-		synchronized (yieldTransactionLock) {
-			final int size = sYieldTransaction.size();
-			if (size == 0)
-				return true;
+	private static EntityCache getEntityCache(Class<? extends Model> type) {
+		final ModelInfo modelInfo = sModelInfo;
+		if (!sEntitiesEnabled || modelInfo == null) return null;
+		return modelInfo.getTableInfo(type).getEntityCache();
+	}
 
-			final int tid = android.os.Process.myTid();
-			if (sYieldTransaction.get(tid) > 0)
-				return true;
+	private static void endSavepoint(TransactionState state) {
+		final String name = getSavepointName(state.depth);
 
-			return false;
+		final PendingChanges changes = state.pendingChanges;
+		state.pendingChanges = changes.getParent();
+
+		final SQLiteDatabase db = openDatabase();
+		if (changes.isSuccessful()) {
+			state.pendingChanges.addAll(changes);
+		}
+		else {
+			// SQLiteDatabase takes any statement starting with ROLLBACK for the end of
+			// the whole transaction, the comment keeps it a plain statement
+			db.execSQL("/* savepoint */ ROLLBACK TO " + name);
+			changes.evict();
+		}
+		db.execSQL("RELEASE " + name);
+	}
+
+	// Cached models may hold values that were rolled back
+	private static void evictChange(Class<? extends Model> type, Long id) {
+		final EntityCache entities = getEntityCache(type);
+		if (entities == null) return;
+
+		if (id == null) {
+			entities.clear();
+		}
+		else {
+			entities.remove(id);
+		}
+	}
+
+	private static String getSavepointName(int level) {
+		return "aa_savepoint_" + level;
+	}
+
+	private static void dispatchChange(Class<? extends Model> type, Long id) {
+		sContext.getContentResolver().notifyChange(ContentProvider.createUri(type, id), null);
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * The transaction a thread has open through {@link ActiveAndroid#beginTransaction()}.
+	 */
+	private static final class TransactionState {
+		int depth = 0;
+		Yield yield;
+		// The innermost open savepoint's, see beginTransaction()
+		PendingChanges pendingChanges;
+		// This thread's share of sReleaseRequests
+		int releaseRequests = 0;
+	}
+
+	/**
+	 * Changes made by one thread's open transaction. A null id set means the whole
+	 * table changed.
+	 */
+	private static final class PendingChanges {
+		private final Map<Class<? extends Model>, Set<Long>> mChanges = new LinkedHashMap<Class<? extends Model>, Set<Long>>();
+		// The enclosing savepoint's or transaction's changes
+		private final PendingChanges mParent;
+		// Set by setTransactionSuccessful() on this level
+		private boolean mSuccessful = false;
+
+		PendingChanges() {
+			this(null);
+		}
+
+		PendingChanges(PendingChanges parent) {
+			mParent = parent;
+		}
+
+		PendingChanges getParent() {
+			return mParent;
+		}
+
+		// The changes of a released savepoint become this level's
+		void addAll(PendingChanges changes) {
+			for (Map.Entry<Class<? extends Model>, Set<Long>> entry : changes.mChanges.entrySet()) {
+				if (entry.getValue() == null) {
+					add(entry.getKey(), null);
+					continue;
+				}
+
+				for (Long id : entry.getValue()) {
+					add(entry.getKey(), id);
+				}
+			}
+		}
+
+		void add(Class<? extends Model> type, Long id) {
+			if (mChanges.containsKey(type) && mChanges.get(type) == null) {
+				return;
+			}
+
+			if (id == null) {
+				mChanges.put(type, null);
+				return;
+			}
+
+			Set<Long> ids = mChanges.get(type);
+			if (ids == null) {
+				ids = new LinkedHashSet<Long>();
+				mChanges.put(type, ids);
+			}
+			ids.add(id);
+		}
+
+		void markSuccessful() {
+			mSuccessful = true;
+		}
+
+		boolean isSuccessful() {
+			return mSuccessful;
+		}
+
+		void dispatch() {
+			for (Map.Entry<Class<? extends Model>, Set<Long>> entry : mChanges.entrySet()) {
+				if (entry.getValue() == null) {
+					dispatchChange(entry.getKey(), null);
+					continue;
+				}
+
+				for (Long id : entry.getValue()) {
+					dispatchChange(entry.getKey(), id);
+				}
+			}
+		}
+
+		// The changes of a rolled back level leave the entity cache
+		void evict() {
+			for (Map.Entry<Class<? extends Model>, Set<Long>> entry : mChanges.entrySet()) {
+				if (entry.getValue() == null) {
+					evictChange(entry.getKey(), null);
+					continue;
+				}
+
+				for (Long id : entry.getValue()) {
+					evictChange(entry.getKey(), id);
+				}
+			}
 		}
 	}
 }
@@ -0,0 +1,85 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Snapshot of one table's entity cache counters, see {@link Cache#getStats}.
+ * Evictions include expired entries and entries whose weak or soft reference was
+ * cleared.
+ */
+public final class CacheStats {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final int mSize;
+	private final long mHitCount;
+	private final long mMissCount;
+	private final long mPutCount;
+	private final long mEvictionCount;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	CacheStats(int size, long hitCount, long missCount, long putCount, long evictionCount) {
+		mSize = size;
+		mHitCount = hitCount;
+		mMissCount = missCount;
+		mPutCount = putCount;
+		mEvictionCount = evictionCount;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public int getSize() {
+		return mSize;
+	}
+
+	public long getHitCount() {
+		return mHitCount;
+	}
+
+	public long getMissCount() {
+		return mMissCount;
+	}
+
+	public long getPutCount() {
+		return mPutCount;
+	}
+
+	public long getEvictionCount() {
+		return mEvictionCount;
+	}
+
+	public float getHitRate() {
+		final long requests = mHitCount + mMissCount;
+		return requests > 0 ? (float) mHitCount / requests : 0;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// OVERRIDEN METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String toString() {
+		return String.format("CacheStats[size=%d,hits=%d,misses=%d,puts=%d,evictions=%d]",
+				mSize, mHitCount, mMissCount, mPutCount, mEvictionCount);
+	}
+}
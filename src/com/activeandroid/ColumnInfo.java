@@ -0,0 +1,487 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import com.activeandroid.annotation.Column;
+import com.activeandroid.serializer.TypeSerializer;
+import com.activeandroid.util.Log;
+import com.activeandroid.util.ReflectionUtils;
+
+/**
+ * One entry of a {@link TableInfo}'s column plan. Everything that used to be looked
+ * up per row (column name, serializer, storage type) is resolved once here.
+ */
+public final class ColumnInfo {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// ENUMERATIONS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public enum Type {
+		BYTE, SHORT, INTEGER, LONG, FLOAT, DOUBLE, BOOLEAN, CHARACTER, STRING, BLOB, MODEL, REF, ENUM, UNKNOWN
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Rough heap sizes used by estimateSize()
+	private static final int REFERENCE_SIZE = 4;
+	private static final int PRIMITIVE_SIZE = 8;
+	private static final int BOXED_SIZE = 16;
+	private static final int STRING_SIZE = 40;
+	private static final int ARRAY_SIZE = 16;
+	private static final int SERIALIZED_SIZE = 48;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final Field mField;
+	private final String mName;
+	private final Column mColumn;
+	private final TypeSerializer mSerializer;
+	private final Class<?> mStorageClass;
+	private final Type mType;
+	private final Class<? extends Model> mReferencedType;
+	private final boolean mPrimitive;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	ColumnInfo(Field field, String name, TypeSerializer serializer) {
+		mField = field;
+		mName = name;
+		mColumn = field.getAnnotation(Column.class);
+		mSerializer = serializer;
+		mStorageClass = serializer != null ? serializer.getSerializedType() : field.getType();
+		mReferencedType = resolveReferencedType(field, mStorageClass);
+		if (mStorageClass.equals(Ref.class) && mReferencedType == null) {
+			Log.w("Column " + name + " must be a Ref to a concrete model type, ignoring it.");
+			mType = Type.UNKNOWN;
+		}
+		else {
+			mType = resolveType(mStorageClass);
+		}
+		mPrimitive = serializer == null && field.getType().isPrimitive();
+
+		mField.setAccessible(true);
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public Field getField() {
+		return mField;
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	public Column getColumn() {
+		return mColumn;
+	}
+
+	public TypeSerializer getSerializer() {
+		return mSerializer;
+	}
+
+	/**
+	 * @return the field's type, or the serializer's serialized type
+	 */
+	public Class<?> getStorageClass() {
+		return mStorageClass;
+	}
+
+	public Type getType() {
+		return mType;
+	}
+
+	/**
+	 * @return the model a {@link Type#MODEL} or {@link Type#REF} column points to, null
+	 *         for any other column
+	 */
+	public Class<? extends Model> getReferencedType() {
+		return mReferencedType;
+	}
+
+	public boolean isReadOnly() {
+		return mColumn.readOnly();
+	}
+
+	/**
+	 * @return true if the column is written by insert and update statements
+	 */
+	public boolean isWritable() {
+		return !mColumn.readOnly() && mType != Type.UNKNOWN;
+	}
+
+	public static Type resolveType(Class<?> type) {
+		if (type.equals(Byte.class) || type.equals(byte.class)) {
+			return Type.BYTE;
+		}
+		else if (type.equals(Short.class) || type.equals(short.class)) {
+			return Type.SHORT;
+		}
+		else if (type.equals(Integer.class) || type.equals(int.class)) {
+			return Type.INTEGER;
+		}
+		else if (type.equals(Long.class) || type.equals(long.class)) {
+			return Type.LONG;
+		}
+		else if (type.equals(Float.class) || type.equals(float.class)) {
+			return Type.FLOAT;
+		}
+		else if (type.equals(Double.class) || type.equals(double.class)) {
+			return Type.DOUBLE;
+		}
+		else if (type.equals(Boolean.class) || type.equals(boolean.class)) {
+			return Type.BOOLEAN;
+		}
+		else if (type.equals(Character.class) || type.equals(char.class)) {
+			return Type.CHARACTER;
+		}
+		else if (type.equals(String.class)) {
+			return Type.STRING;
+		}
+		else if (type.equals(Byte[].class) || type.equals(byte[].class)) {
+			return Type.BLOB;
+		}
+		else if (ReflectionUtils.isModel(type)) {
+			return Type.MODEL;
+		}
+		else if (type.equals(Ref.class)) {
+			return Type.REF;
+		}
+		else if (ReflectionUtils.isSubclassOf(type, Enum.class)) {
+			return Type.ENUM;
+		}
+
+		return Type.UNKNOWN;
+	}
+
+	/**
+	 * @return the model a model or {@code Ref<T>} field points to, or null if the field
+	 *         is neither or a Ref without a concrete type argument
+	 */
+	@SuppressWarnings("unchecked")
+	public static Class<? extends Model> resolveReferencedType(Field field, Class<?> storageClass) {
+		if (ReflectionUtils.isModel(storageClass)) {
+			return (Class<? extends Model>) storageClass;
+		}
+		if (!storageClass.equals(Ref.class)) {
+			return null;
+		}
+
+		if (field.getGenericType() instanceof ParameterizedType) {
+			final java.lang.reflect.Type argument = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+			if (argument instanceof Class && ReflectionUtils.isModel((Class<?>) argument)) {
+				return (Class<? extends Model>) argument;
+			}
+		}
+
+		return null;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	void put(Model model, ContentValues values) throws IllegalAccessException {
+		final Object value = serialize(mField.get(model));
+
+		if (value == null) {
+			values.putNull(mName);
+			return;
+		}
+
+		switch (mType) {
+		case BYTE:
+			values.put(mName, (Byte) value);
+			break;
+		case SHORT:
+			values.put(mName, (Short) value);
+			break;
+		case INTEGER:
+			values.put(mName, (Integer) value);
+			break;
+		case LONG:
+			values.put(mName, (Long) value);
+			break;
+		case FLOAT:
+			values.put(mName, (Float) value);
+			break;
+		case DOUBLE:
+			values.put(mName, (Double) value);
+			break;
+		case BOOLEAN:
+			values.put(mName, (Boolean) value);
+			break;
+		case CHARACTER:
+		case STRING:
+			values.put(mName, value.toString());
+			break;
+		case BLOB:
+			values.put(mName, (byte[]) value);
+			break;
+		case MODEL:
+			values.put(mName, ((Model) value).getId());
+			break;
+		case REF:
+			values.put(mName, ((Ref<?>) value).getId());
+			break;
+		case ENUM:
+			values.put(mName, ((Enum<?>) value).name());
+			break;
+		default:
+			break;
+		}
+	}
+
+	void bind(Model model, SQLiteStatement statement, int index) throws IllegalAccessException {
+		if (mPrimitive) {
+			switch (mType) {
+			case BYTE:
+				statement.bindLong(index, mField.getByte(model));
+				return;
+			case SHORT:
+				statement.bindLong(index, mField.getShort(model));
+				return;
+			case INTEGER:
+				statement.bindLong(index, mField.getInt(model));
+				return;
+			case LONG:
+				statement.bindLong(index, mField.getLong(model));
+				return;
+			case FLOAT:
+				statement.bindDouble(index, mField.getFloat(model));
+				return;
+			case DOUBLE:
+				statement.bindDouble(index, mField.getDouble(model));
+				return;
+			case BOOLEAN:
+				statement.bindLong(index, mField.getBoolean(model) ? 1 : 0);
+				return;
+			case CHARACTER:
+				statement.bindString(index, String.valueOf(mField.getChar(model)));
+				return;
+			default:
+				break;
+			}
+		}
+
+		final Object value = serialize(mField.get(model));
+
+		if (value == null) {
+			statement.bindNull(index);
+			return;
+		}
+
+		switch (mType) {
+		case BYTE:
+		case SHORT:
+		case INTEGER:
+		case LONG:
+			statement.bindLong(index, ((Number) value).longValue());
+			break;
+		case FLOAT:
+		case DOUBLE:
+			statement.bindDouble(index, ((Number) value).doubleValue());
+			break;
+		case BOOLEAN:
+			statement.bindLong(index, ((Boolean) value) ? 1 : 0);
+			break;
+		case CHARACTER:
+		case STRING:
+			statement.bindString(index, value.toString());
+			break;
+		case BLOB:
+			statement.bindBlob(index, (byte[]) value);
+			break;
+		case MODEL:
+		case REF:
+			final Long id = mType == Type.MODEL ? ((Model) value).getId() : ((Ref<?>) value).getId();
+			if (id != null) {
+				statement.bindLong(index, id);
+			}
+			else {
+				statement.bindNull(index);
+			}
+			break;
+		case ENUM:
+			statement.bindString(index, ((Enum<?>) value).name());
+			break;
+		default:
+			statement.bindNull(index);
+			break;
+		}
+	}
+
+	/**
+	 * Copy the column at columnIndex of the current row into the model. NULL
+	 * columns leave the field untouched.
+	 */
+	void load(Model model, Cursor cursor, int columnIndex) throws IllegalAccessException {
+		if (cursor.isNull(columnIndex)) {
+			return;
+		}
+
+		if (mPrimitive) {
+			switch (mType) {
+			case BYTE:
+				mField.setByte(model, (byte) cursor.getInt(columnIndex));
+				return;
+			case SHORT:
+				mField.setShort(model, cursor.getShort(columnIndex));
+				return;
+			case INTEGER:
+				mField.setInt(model, cursor.getInt(columnIndex));
+				return;
+			case LONG:
+				mField.setLong(model, cursor.getLong(columnIndex));
+				return;
+			case FLOAT:
+				mField.setFloat(model, cursor.getFloat(columnIndex));
+				return;
+			case DOUBLE:
+				mField.setDouble(model, cursor.getDouble(columnIndex));
+				return;
+			case BOOLEAN:
+				mField.setBoolean(model, cursor.getInt(columnIndex) != 0);
+				return;
+			case CHARACTER:
+				mField.setChar(model, cursor.getString(columnIndex).charAt(0));
+				return;
+			default:
+				break;
+			}
+		}
+
+		Object value = read(cursor, columnIndex);
+
+		// Use a deserializer if one is available
+		if (mSerializer != null) {
+			value = mSerializer.deserialize(value);
+		}
+
+		if (value != null) {
+			mField.set(model, value);
+		}
+	}
+
+	/**
+	 * Reset the field to the value it has in prototype, a new instance, including
+	 * what its initializer assigned. Objects are shared with prototype, not copied.
+	 */
+	void clear(Model model, Model prototype) throws IllegalAccessException {
+		mField.set(model, mField.get(prototype));
+	}
+
+	/**
+	 * @return the approximate number of heap bytes the field's value takes in model.
+	 *         Referenced models and enum constants are counted as references only.
+	 */
+	int estimateSize(Model model) throws IllegalAccessException {
+		if (mPrimitive) {
+			return PRIMITIVE_SIZE;
+		}
+
+		final Object value = mField.get(model);
+		if (value == null) {
+			return REFERENCE_SIZE;
+		}
+		if (mSerializer != null) {
+			return REFERENCE_SIZE + SERIALIZED_SIZE;
+		}
+
+		switch (mType) {
+		case STRING:
+			return REFERENCE_SIZE + STRING_SIZE + 2 * ((String) value).length();
+		case BLOB:
+			return REFERENCE_SIZE + ARRAY_SIZE + ((value instanceof byte[]) ? ((byte[]) value).length : 4 * ((Byte[]) value).length);
+		case MODEL:
+		case ENUM:
+			return REFERENCE_SIZE;
+		case REF:
+			return REFERENCE_SIZE + BOXED_SIZE + 2 * REFERENCE_SIZE;
+		default:
+			return REFERENCE_SIZE + BOXED_SIZE;
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private Object serialize(Object value) {
+		if (value == null || mSerializer == null) {
+			return value;
+		}
+
+		value = mSerializer.serialize(value);
+		// check that the serializer returned what it promised
+		if (value != null && !value.getClass().equals(mStorageClass)) {
+			Log.w(String.format("TypeSerializer returned wrong type: expected a %s but got a %s",
+					mStorageClass, value.getClass()));
+		}
+
+		return value;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Object read(Cursor cursor, int columnIndex) {
+		switch (mType) {
+		case BYTE:
+			return (byte) cursor.getInt(columnIndex);
+		case SHORT:
+			return cursor.getShort(columnIndex);
+		case INTEGER:
+			return cursor.getInt(columnIndex);
+		case LONG:
+			return cursor.getLong(columnIndex);
+		case FLOAT:
+			return cursor.getFloat(columnIndex);
+		case DOUBLE:
+			return cursor.getDouble(columnIndex);
+		case BOOLEAN:
+			return cursor.getInt(columnIndex) != 0;
+		case CHARACTER:
+			return cursor.getString(columnIndex).charAt(0);
+		case STRING:
+			return cursor.getString(columnIndex);
+		case BLOB:
+			return cursor.getBlob(columnIndex);
+		case MODEL:
+			return Model.load(mReferencedType, cursor.getLong(columnIndex));
+		case REF:
+			return Ref.to(mReferencedType, cursor.getLong(columnIndex));
+		case ENUM:
+			return Enum.valueOf((Class<? extends Enum>) mStorageClass, cursor.getString(columnIndex));
+		default:
+			return null;
+		}
+	}
+}
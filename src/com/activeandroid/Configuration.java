@@ -37,6 +37,11 @@ public class Configuration {
 	private List<Class<? extends Model>> mModelClasses;
 	private List<Class<? extends TypeSerializer>> mTypeSerializers;
 	private int mCacheSize;
+	private int mCacheMaxBytes;
+	private boolean mNotifyByTable;
+	private boolean mWriteAheadLogging;
+	private int mGroupCommitWindow;
+	private int mGroupCommitSize;
 
 	//////////////////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
@@ -74,10 +79,54 @@ public class Configuration {
 		return mTypeSerializers;
 	}
 
+	/**
+	 * @return the number of models the entity cache keeps per table. The bound used
+	 *         to be shared by all tables, so the total now grows with the number of
+	 *         tables.
+	 */
 	public int getCacheSize() {
 		return mCacheSize;
 	}
 
+	/**
+	 * @return the heap budget of the entity cache in bytes, shared by all tables. 0
+	 *         means the cache is bounded by {@link #getCacheSize()} entries per table.
+	 */
+	public int getCacheMaxBytes() {
+		return mCacheMaxBytes;
+	}
+
+	/**
+	 * @return true to send one change notification per table instead of one per row
+	 */
+	public boolean isNotifyByTable() {
+		return mNotifyByTable;
+	}
+
+	/**
+	 * @return true to open the database in write-ahead logging mode, so queries on
+	 *         other threads don't wait for an open write transaction
+	 */
+	public boolean isWriteAheadLogging() {
+		return mWriteAheadLogging;
+	}
+
+	/**
+	 * @return how long in milliseconds the {@link WriteQueue} keeps a transaction open
+	 *         for more writes. 0 disables group commit.
+	 */
+	public int getGroupCommitWindow() {
+		return mGroupCommitWindow;
+	}
+
+	/**
+	 * @return the most writes committed together, 0 for
+	 *         {@link WriteQueue#MAX_BATCH_SIZE}
+	 */
+	public int getGroupCommitSize() {
+		return mGroupCommitSize;
+	}
+
 	public boolean isValid() {
 		return mModelClasses != null && mModelClasses.size() > 0;
 	}
@@ -96,6 +145,11 @@ public class Configuration {
 		private final static String AA_MODELS = "AA_MODELS";
 		private final static String AA_SERIALIZERS = "AA_SERIALIZERS";
 		private static final String AA_CACHE_SIZE = "AA_CACHE_SIZE";
+		private static final String AA_CACHE_MAX_BYTES = "AA_CACHE_MAX_BYTES";
+		private static final String AA_NOTIFY_BY_TABLE = "AA_NOTIFY_BY_TABLE";
+		private static final String AA_WRITE_AHEAD_LOGGING = "AA_WRITE_AHEAD_LOGGING";
+		private static final String AA_GROUP_COMMIT_WINDOW = "AA_GROUP_COMMIT_WINDOW";
+		private static final String AA_GROUP_COMMIT_SIZE = "AA_GROUP_COMMIT_SIZE";
 
 		private static final int DEFAULT_CACHE_SIZE = 1024;
 		private static final String DEFAULT_DB_NAME = "Application.db";
@@ -107,6 +161,11 @@ public class Configuration {
 		private Context mContext;
 
 		private Integer mCacheSize;
+		private Integer mCacheMaxBytes;
+		private Boolean mNotifyByTable;
+		private Boolean mWriteAheadLogging;
+		private Integer mGroupCommitWindow;
+		private Integer mGroupCommitSize;
 		private String mDatabaseName;
 		private Integer mDatabaseVersion;
 		private List<Class<? extends Model>> mModelClasses;
@@ -124,11 +183,53 @@ public class Configuration {
 		// PUBLIC METHODS
 		//////////////////////////////////////////////////////////////////////////////////////
 
+		/**
+		 * Bound the entity cache to cacheSize models per table, not in total. Use
+		 * {@link #setCacheMaxBytes} to bound the memory of all tables together.
+		 */
 		public Builder setCacheSize(int cacheSize) {
 			mCacheSize = cacheSize;
 			return this;
 		}
 
+		/**
+		 * Bound the entity cache by the estimated heap size of the cached models
+		 * instead of by their number.
+		 */
+		public Builder setCacheMaxBytes(int cacheMaxBytes) {
+			mCacheMaxBytes = cacheMaxBytes;
+			return this;
+		}
+
+		public Builder setNotifyByTable(boolean notifyByTable) {
+			mNotifyByTable = notifyByTable;
+			return this;
+		}
+
+		/**
+		 * Enable write-ahead logging (Android 3.0 and up). Queries then run on a pool
+		 * of reader connections while another thread holds a write transaction,
+		 * instead of waiting for it to yield. Ignored for in-memory databases.
+		 */
+		public Builder setWriteAheadLogging(boolean writeAheadLogging) {
+			mWriteAheadLogging = writeAheadLogging;
+			return this;
+		}
+
+		/**
+		 * Merge writes made outside a transaction into shared transactions, one
+		 * commit per windowMillis or per maxWrites writes, whichever comes first.
+		 * A write returns before it's committed, see {@link WriteQueue#sync()}.
+		 * Best combined with {@link #setWriteAheadLogging(boolean)}, so queries
+		 * don't wait for the open transaction. They don't see its rows either, not
+		 * even on the thread that wrote them, until it commits.
+		 */
+		public Builder setGroupCommit(int windowMillis, int maxWrites) {
+			mGroupCommitWindow = windowMillis;
+			mGroupCommitSize = maxWrites;
+			return this;
+		}
+
 		public Builder setDatabaseName(String databaseName) {
 			mDatabaseName = databaseName;
 			return this;
@@ -222,6 +323,36 @@ public class Configuration {
 				configuration.mCacheSize = getMetaDataCacheSizeOrDefault();
 			}
 
+			// Get cache byte budget from meta-data
+			if (mCacheMaxBytes != null) {
+				configuration.mCacheMaxBytes = mCacheMaxBytes;
+			} else {
+				configuration.mCacheMaxBytes = getMetaDataCacheMaxBytesOrDefault();
+			}
+
+			// Get notification granularity from meta-data
+			if (mNotifyByTable != null) {
+				configuration.mNotifyByTable = mNotifyByTable;
+			} else {
+				configuration.mNotifyByTable = getMetaDataNotifyByTableOrDefault();
+			}
+
+			// Get journal mode from meta-data
+			if (mWriteAheadLogging != null) {
+				configuration.mWriteAheadLogging = mWriteAheadLogging;
+			} else {
+				configuration.mWriteAheadLogging = getMetaDataWriteAheadLoggingOrDefault();
+			}
+
+			// Get group commit window from meta-data
+			if (mGroupCommitWindow != null) {
+				configuration.mGroupCommitWindow = mGroupCommitWindow;
+				configuration.mGroupCommitSize = mGroupCommitSize;
+			} else {
+				configuration.mGroupCommitWindow = getMetaDataGroupCommitWindowOrDefault();
+				configuration.mGroupCommitSize = getMetaDataGroupCommitSizeOrDefault();
+			}
+
 			// Get type serializer classes from meta-data
 			if (mTypeSerializers != null) {
 				configuration.mTypeSerializers = mTypeSerializers;
@@ -251,6 +382,51 @@ public class Configuration {
 			return size;
 		}
 
+		private int getMetaDataCacheMaxBytesOrDefault() {
+			Integer maxBytes = ReflectionUtils.getMetaData(mContext, AA_CACHE_MAX_BYTES);
+			if (maxBytes == null) {
+				maxBytes = 0;
+			}
+
+			return maxBytes;
+		}
+
+		private boolean getMetaDataNotifyByTableOrDefault() {
+			Boolean notifyByTable = ReflectionUtils.getMetaData(mContext, AA_NOTIFY_BY_TABLE);
+			if (notifyByTable == null) {
+				notifyByTable = false;
+			}
+
+			return notifyByTable;
+		}
+
+		private boolean getMetaDataWriteAheadLoggingOrDefault() {
+			Boolean writeAheadLogging = ReflectionUtils.getMetaData(mContext, AA_WRITE_AHEAD_LOGGING);
+			if (writeAheadLogging == null) {
+				writeAheadLogging = false;
+			}
+
+			return writeAheadLogging;
+		}
+
+		private int getMetaDataGroupCommitWindowOrDefault() {
+			Integer window = ReflectionUtils.getMetaData(mContext, AA_GROUP_COMMIT_WINDOW);
+			if (window == null) {
+				window = 0;
+			}
+
+			return window;
+		}
+
+		private int getMetaDataGroupCommitSizeOrDefault() {
+			Integer size = ReflectionUtils.getMetaData(mContext, AA_GROUP_COMMIT_SIZE);
+			if (size == null) {
+				size = 0;
+			}
+
+			return size;
+		}
+
 		private String getMetaDataDatabaseNameOrDefault() {
 			String aaName = ReflectionUtils.getMetaData(mContext, AA_DB_NAME);
 			if (aaName == null) {
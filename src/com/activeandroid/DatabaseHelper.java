@@ -27,6 +27,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import android.annotation.SuppressLint;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDoneException;
@@ -46,6 +47,13 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
 
 	public final static String MIGRATION_PATH = "migrations";
 
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final boolean mWriteAheadLoggingRequested;
+	private volatile boolean mWriteAheadLogging = false;
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -53,6 +61,7 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
 	public DatabaseHelper(Configuration configuration) {
 		super(configuration.getContext(), configuration.getDatabaseName(), null, configuration.getDatabaseVersion());
 		copyAttachedDatabase(configuration.getContext(), configuration.getDatabaseName());
+		mWriteAheadLoggingRequested = configuration.isWriteAheadLogging() && configuration.getDatabaseName() != null;
 	}
 
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -61,6 +70,7 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
 
 	@Override
 	public void onOpen(SQLiteDatabase db) {
+		executeJournalMode(db);
 		executePragmas(db);
 		executeCreate(db);
 		executeCreateIndex(db);
@@ -90,6 +100,14 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
 	// PUBLIC METHODS
 	//////////////////////////////////////////////////////////////////////////////////////
 
+	/**
+	 * @return true once the database is open in write-ahead logging mode, see
+	 *         {@link Configuration#isWriteAheadLogging()}
+	 */
+	public boolean isWriteAheadLogging() {
+		return mWriteAheadLogging;
+	}
+
 	public void copyAttachedDatabase(Context context, String databaseName) {
 		if (databaseName == null)
 			return;
@@ -129,6 +147,22 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
 	// PRIVATE METHODS
 	//////////////////////////////////////////////////////////////////////////////////////
 
+	@SuppressLint("NewApi")
+	private void executeJournalMode(SQLiteDatabase db) {
+		if (!mWriteAheadLoggingRequested || Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+			return;
+		}
+
+		// onOpen() runs outside of any transaction, as enabling WAL requires
+		mWriteAheadLogging = db.enableWriteAheadLogging();
+		if (mWriteAheadLogging) {
+			Log.i("Write-ahead logging enabled.");
+		}
+		else {
+			Log.w("Couldn't enable write-ahead logging.");
+		}
+	}
+
 	private void executePragmas(SQLiteDatabase db) {
 		if (SQLiteUtils.FOREIGN_KEYS_SUPPORTED) {
 			db.execSQL("PRAGMA foreign_keys=ON;");
@@ -0,0 +1,542 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.SystemClock;
+
+import com.activeandroid.annotation.Table.CachePolicy;
+
+/**
+ * Identity map of one table, keyed by the primitive row id. Open addressing with
+ * linear probing keeps lookups free of boxing and allocation; when full, the clock
+ * algorithm evicts an entry that hasn't been read since the hand last passed it.
+ * Ids are spread over independently locked segments so readers on different
+ * threads rarely wait for each other.
+ * <p>
+ * The cache is bounded either by an entry count or by a {@link Budget} of bytes
+ * shared by all tables, in which case entries are weighed with
+ * {@link TableInfo#estimateSize} and evicted from whichever table holds them.
+ * Entries may be held through weak or soft references and may expire after a
+ * time to live, see {@link com.activeandroid.annotation.Table#cachePolicy()}.
+ */
+final class EntityCache {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final int MAX_SEGMENTS = 16;
+	private static final int INITIAL_SEGMENT_SIZE = 8;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final Segment[] mSegments;
+	private final int mSegmentShift;
+
+	// Byte budget mode only
+	private final TableInfo mTableInfo;
+	private final Budget mBudget;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Hold at most maxSize entries.
+	 *
+	 * @param ttl milliseconds an entry stays valid, 0 for no limit
+	 */
+	EntityCache(int maxSize, CachePolicy policy, long ttl) {
+		this(segmentCount(maxSize), maxSize, policy, ttl, null, null);
+	}
+
+	/**
+	 * Hold entries as long as the budget, shared with the other tables, allows.
+	 */
+	EntityCache(TableInfo tableInfo, Budget budget, long ttl) {
+		this(MAX_SEGMENTS, Integer.MAX_VALUE, CachePolicy.STRONG, ttl, tableInfo, budget);
+	}
+
+	private EntityCache(int segmentCount, int maxSize, CachePolicy policy, long ttl,
+			TableInfo tableInfo, Budget budget) {
+
+		mSegments = new Segment[segmentCount];
+		mSegmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+		mTableInfo = tableInfo;
+		mBudget = budget;
+
+		final int segmentSize = (maxSize == Integer.MAX_VALUE) ? maxSize : (maxSize + segmentCount - 1) / segmentCount;
+		for (int i = 0; i < segmentCount; i++) {
+			mSegments[i] = new Segment(segmentSize, policy, ttl, budget);
+		}
+
+		if (budget != null) {
+			budget.register(mSegments);
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	Model get(long id) {
+		return segmentFor(id).get(id);
+	}
+
+	void put(long id, Model entity) {
+		// Weigh outside the lock, it reads every String and byte[] column
+		final int weight = (mTableInfo != null) ? mTableInfo.estimateSize(entity) : 0;
+		segmentFor(id).put(id, entity, weight);
+
+		// Outside the segment lock too, eviction takes the lock of every segment it visits
+		if (mBudget != null) {
+			mBudget.enforce();
+		}
+	}
+
+	void remove(long id) {
+		segmentFor(id).remove(id);
+	}
+
+	void clear() {
+		trim(0);
+	}
+
+	/**
+	 * Evict entries until at most keepPercent of each segment is left.
+	 */
+	void trim(int keepPercent) {
+		for (Segment segment : mSegments) {
+			segment.trim(keepPercent);
+		}
+	}
+
+	int size() {
+		int size = 0;
+		for (Segment segment : mSegments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	CacheStats getStats() {
+		int size = 0;
+		long hitCount = 0;
+		long missCount = 0;
+		long putCount = 0;
+		long evictionCount = 0;
+
+		for (Segment segment : mSegments) {
+			synchronized (segment) {
+				size += segment.mSize;
+				hitCount += segment.mHitCount;
+				missCount += segment.mMissCount;
+				putCount += segment.mPutCount;
+				evictionCount += segment.mEvictionCount;
+			}
+		}
+
+		return new CacheStats(size, hitCount, missCount, putCount, evictionCount);
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// A power of two, at most one per expected entry
+	private static int segmentCount(int maxSize) {
+		int count = 1;
+		while (count < MAX_SEGMENTS && count * 2 <= maxSize) {
+			count <<= 1;
+		}
+		return count;
+	}
+
+	// Fibonacci hashing spreads sequential ids over the table
+	private static int hash(long id) {
+		return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+	}
+
+	private Segment segmentFor(long id) {
+		// The top bits pick the segment, the low bits the slot within it
+		return mSegmentShift == 32 ? mSegments[0] : mSegments[hash(id) >>> mSegmentShift];
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Bytes used by the caches of all tables. When over budget, a hand moves over the
+	 * segments of every table in turn and each one holding more than its share of the
+	 * budget evicts an entry with its clock. A busy table can use what the others
+	 * leave free, but can't push them below their share.
+	 */
+	static final class Budget {
+		private final long mMaxBytes;
+		private final AtomicLong mUsedBytes = new AtomicLong();
+		private final AtomicInteger mHand = new AtomicInteger();
+
+		private volatile Segment[] mSegments = new Segment[0];
+
+		Budget(long maxBytes) {
+			mMaxBytes = maxBytes;
+		}
+
+		private synchronized void register(Segment[] segments) {
+			final Segment[] all = new Segment[mSegments.length + segments.length];
+			System.arraycopy(mSegments, 0, all, 0, mSegments.length);
+			System.arraycopy(segments, 0, all, mSegments.length, segments.length);
+			mSegments = all;
+		}
+
+		private void add(long delta) {
+			mUsedBytes.addAndGet(delta);
+		}
+
+		private void enforce() {
+			final Segment[] segments = mSegments;
+			long floor = mMaxBytes / segments.length;
+			int idle = 0;
+
+			while (mUsedBytes.get() > mMaxBytes) {
+				if (idle == segments.length) {
+					if (floor < 0) {
+						return;
+					}
+
+					// No segment is over its share, evict from any that isn't empty
+					floor = -1;
+					idle = 0;
+				}
+
+				final int index = (mHand.getAndIncrement() & Integer.MAX_VALUE) % segments.length;
+				idle = segments[index].evictOne(floor) ? 0 : idle + 1;
+			}
+		}
+	}
+
+	private static final class Segment {
+		//////////////////////////////////////////////////////////////////////////////////////
+		// PRIVATE MEMBERS
+		//////////////////////////////////////////////////////////////////////////////////////
+
+		private final int mMaxSize;
+		private final CachePolicy mPolicy;
+		private final long mTtl;
+		private final Budget mBudget;
+
+		private int mMask;
+
+		// A slot is empty when its value is null. Values are models or, for weak and
+		// soft policies, references to them.
+		private long[] mKeys;
+		private Object[] mValues;
+		private int[] mWeights;
+		private long[] mExpiries;
+		private boolean[] mReferenced;
+
+		private int mSize = 0;
+		private int mHand = 0;
+		private long mBytes = 0;
+
+		private long mHitCount = 0;
+		private long mMissCount = 0;
+		private long mPutCount = 0;
+		private long mEvictionCount = 0;
+
+		//////////////////////////////////////////////////////////////////////////////////////
+		// CONSTRUCTORS
+		//////////////////////////////////////////////////////////////////////////////////////
+
+		Segment(int maxSize, CachePolicy policy, long ttl, Budget budget) {
+			mMaxSize = maxSize;
+			mPolicy = policy;
+			mTtl = ttl;
+			mBudget = budget;
+
+			// Keep the load factor at or below one half, unbounded segments grow later
+			final int expected = (maxSize == Integer.MAX_VALUE) ? INITIAL_SEGMENT_SIZE : maxSize;
+			int capacity = 2;
+			while (capacity < expected * 2) {
+				capacity <<= 1;
+			}
+
+			allocate(capacity);
+		}
+
+		//////////////////////////////////////////////////////////////////////////////////////
+		// PACKAGE PRIVATE METHODS
+		//////////////////////////////////////////////////////////////////////////////////////
+
+		synchronized Model get(long id) {
+			final int index = indexOf(id);
+			if (index < 0) {
+				mMissCount++;
+				return null;
+			}
+
+			final Model entity = valueAt(index);
+			if (entity == null || (mTtl > 0 && SystemClock.uptimeMillis() >= mExpiries[index])) {
+				// Collected or expired
+				removeAt(index);
+				mEvictionCount++;
+				mMissCount++;
+				return null;
+			}
+
+			mReferenced[index] = true;
+			mHitCount++;
+			return entity;
+		}
+
+		synchronized void put(long id, Model entity, int weight) {
+			mPutCount++;
+
+			int index = indexOf(id);
+			if (index >= 0) {
+				addUsedBytes(weight - mWeights[index]);
+				setAt(index, id, entity, weight);
+				mReferenced[index] = true;
+			}
+			else {
+				if (mSize >= mMaxSize) {
+					evict();
+				}
+				else if ((mSize + 1) * 2 > mValues.length) {
+					grow();
+				}
+
+				index = slot(id);
+				while (mValues[index] != null) {
+					index = (index + 1) & mMask;
+				}
+
+				addUsedBytes(weight);
+				setAt(index, id, entity, weight);
+				mReferenced[index] = false;
+				mSize++;
+			}
+		}
+
+		synchronized void remove(long id) {
+			final int index = indexOf(id);
+			if (index >= 0) {
+				removeAt(index);
+			}
+		}
+
+		/**
+		 * @return false if the segment holds floor bytes or less
+		 */
+		synchronized boolean evictOne(long floor) {
+			if (mSize == 0 || mBytes <= floor) {
+				return false;
+			}
+
+			evict();
+			return true;
+		}
+
+		synchronized void trim(int keepPercent) {
+			final int target = (int) ((long) mSize * keepPercent / 100);
+
+			if (target == 0) {
+				for (int i = 0; i < mValues.length; i++) {
+					if (mValues[i] != null) {
+						addUsedBytes(-mWeights[i]);
+						mEvictionCount++;
+					}
+					mValues[i] = null;
+					mReferenced[i] = false;
+				}
+
+				mSize = 0;
+				mHand = 0;
+				return;
+			}
+
+			while (mSize > target) {
+				evict();
+			}
+		}
+
+		synchronized int size() {
+			return mSize;
+		}
+
+		//////////////////////////////////////////////////////////////////////////////////////
+		// PRIVATE METHODS
+		//////////////////////////////////////////////////////////////////////////////////////
+
+		private void allocate(int capacity) {
+			mMask = capacity - 1;
+			mKeys = new long[capacity];
+			mValues = new Object[capacity];
+			mWeights = new int[capacity];
+			mExpiries = (mTtl > 0) ? new long[capacity] : null;
+			mReferenced = new boolean[capacity];
+		}
+
+		private void grow() {
+			final long[] keys = mKeys;
+			final Object[] values = mValues;
+			final int[] weights = mWeights;
+			final long[] expiries = mExpiries;
+			final boolean[] referenced = mReferenced;
+
+			allocate(values.length * 2);
+
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] == null) {
+					continue;
+				}
+
+				int index = slot(keys[i]);
+				while (mValues[index] != null) {
+					index = (index + 1) & mMask;
+				}
+
+				mKeys[index] = keys[i];
+				mValues[index] = values[i];
+				mWeights[index] = weights[i];
+				mReferenced[index] = referenced[i];
+				if (expiries != null) {
+					mExpiries[index] = expiries[i];
+				}
+			}
+
+			mHand = 0;
+		}
+
+		private void setAt(int index, long id, Model entity, int weight) {
+			mKeys[index] = id;
+			mWeights[index] = weight;
+
+			switch (mPolicy) {
+			case WEAK:
+				mValues[index] = new WeakReference<Model>(entity);
+				break;
+			case SOFT:
+				mValues[index] = new SoftReference<Model>(entity);
+				break;
+			default:
+				mValues[index] = entity;
+				break;
+			}
+
+			if (mExpiries != null) {
+				mExpiries[index] = SystemClock.uptimeMillis() + mTtl;
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private Model valueAt(int index) {
+			final Object value = mValues[index];
+			if (value instanceof Reference) {
+				return ((Reference<Model>) value).get();
+			}
+			return (Model) value;
+		}
+
+		private void addUsedBytes(long delta) {
+			mBytes += delta;
+			if (mBudget != null) {
+				mBudget.add(delta);
+			}
+		}
+
+		private int slot(long id) {
+			return hash(id) & mMask;
+		}
+
+		private int indexOf(long id) {
+			int index = slot(id);
+
+			while (mValues[index] != null) {
+				if (mKeys[index] == id) {
+					return index;
+				}
+				index = (index + 1) & mMask;
+			}
+
+			return -1;
+		}
+
+		private void evict() {
+			while (mSize > 0) {
+				final int index = mHand;
+				mHand = (mHand + 1) & mMask;
+
+				if (mValues[index] == null) {
+					continue;
+				}
+
+				if (mReferenced[index]) {
+					// Second chance
+					mReferenced[index] = false;
+					continue;
+				}
+
+				removeAt(index);
+				mEvictionCount++;
+				return;
+			}
+		}
+
+		/**
+		 * Remove by shifting later entries of the probe sequence back, so no tombstones
+		 * are needed.
+		 */
+		private void removeAt(int index) {
+			addUsedBytes(-mWeights[index]);
+
+			int hole = index;
+			int next = (hole + 1) & mMask;
+
+			while (mValues[next] != null) {
+				final int home = slot(mKeys[next]);
+
+				// Move the entry unless its home slot lies cyclically in (hole, next]
+				final boolean stays = (hole <= next) ? (hole < home && home <= next) : (hole < home || home <= next);
+				if (!stays) {
+					mKeys[hole] = mKeys[next];
+					mValues[hole] = mValues[next];
+					mWeights[hole] = mWeights[next];
+					mReferenced[hole] = mReferenced[next];
+					if (mExpiries != null) {
+						mExpiries[hole] = mExpiries[next];
+					}
+					hole = next;
+				}
+
+				next = (next + 1) & mMask;
+			}
+
+			mValues[hole] = null;
+			mReferenced[hole] = false;
+			mSize--;
+		}
+	}
+}
@@ -19,14 +19,15 @@ package com.activeandroid;
 import android.annotation.SuppressLint;
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.activeandroid.annotation.Column;
 import com.activeandroid.content.ContentProvider;
 import com.activeandroid.query.Delete;
 import com.activeandroid.query.Select;
-import com.activeandroid.serializer.TypeSerializer;
+import com.activeandroid.util.ForeignKeyPrefetcher;
 import com.activeandroid.util.Log;
-import com.activeandroid.util.ReflectionUtils;
 import com.activeandroid.util.SQLiteUtils;
 import com.novoda.notils.cursor.CursorList;
 
@@ -35,6 +36,16 @@ import android.net.Uri;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.ReentrantLock;
 
 @SuppressWarnings("unchecked")
@@ -42,6 +53,11 @@ public abstract class Model implements com.novoda.notils.cursor.SimpleCursorList
 	public static final String FIELD_ID = "Id";
 	public static final String ID = FIELD_ID;
 
+	public static final int DEFAULT_CHUNK_SIZE = 500;
+
+	// SQLITE_MAX_VARIABLE_NUMBER
+	private static final int MAX_BIND_ARGUMENTS = 999;
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// PRIVATE MEMBERS
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -61,6 +77,8 @@ public abstract class Model implements com.novoda.notils.cursor.SimpleCursorList
 
 	private boolean mDeleted = false;
 
+	private static final ThreadLocal<BulkSave> sBulkSave = new ThreadLocal<BulkSave>();
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -116,8 +134,7 @@ public abstract class Model implements com.novoda.notils.cursor.SimpleCursorList
 		SQLiteUtils.delete(mTableInfo.getTableName(), "Id=?", new String[] { getId().toString() });
 		Cache.removeEntity(this);
 
-		Cache.getContext().getContentResolver()
-				.notifyChange(ContentProvider.createUri(mTableInfo.getType(), mId), null);
+		Cache.notifyChange(mTableInfo.getType(), mId);
 	}
 
 	/**
@@ -150,80 +167,22 @@ public abstract class Model implements com.novoda.notils.cursor.SimpleCursorList
 		return (T) SQLiteUtils.rawQuerySingle(mTableInfo.getType(), sql, selectionArgs);
 	}
 
-	@SuppressLint("NewApi")
 	public ContentValues toContentValues() {
 		final ContentValues values = new ContentValues();
 
-		for (Field field : mTableInfo.getFields()) {
-			final String fieldName = mTableInfo.getColumnName(field);
-			Class<?> fieldType = field.getType();
+		final ModelBinder<Model> binder = mTableInfo.getBinder();
+		if (binder != null) {
+			values.put(FIELD_ID, mId);
+			binder.bind(this, values);
+			return values;
+		}
 
-			if (mTableInfo.isReadOnlyColumn(fieldName))
+		for (ColumnInfo column : mTableInfo.getColumnPlan()) {
+			if (column.isReadOnly())
 				continue;
 
-			field.setAccessible(true);
-
 			try {
-				Object value = field.get(this);
-
-				if (value != null) {
-					final TypeSerializer typeSerializer = Cache.getParserForType(fieldType);
-					if (typeSerializer != null) {
-						// serialize data
-						value = typeSerializer.serialize(value);
-						// set new object type
-						if (value != null) {
-							fieldType = value.getClass();
-							// check that the serializer returned what it promised
-							if (!fieldType.equals(typeSerializer.getSerializedType())) {
-								Log.w(String.format("TypeSerializer returned wrong type: expected a %s but got a %s",
-										typeSerializer.getSerializedType(), fieldType));
-							}
-						}
-					}
-				}
-
-				// TODO: Find a smarter way to do this? This if block is necessary because we
-				// can't know the type until runtime.
-				if (value == null) {
-					values.putNull(fieldName);
-				}
-				else if (fieldType.equals(Byte.class) || fieldType.equals(byte.class)) {
-					values.put(fieldName, (Byte) value);
-				}
-				else if (fieldType.equals(Short.class) || fieldType.equals(short.class)) {
-					values.put(fieldName, (Short) value);
-				}
-				else if (fieldType.equals(Integer.class) || fieldType.equals(int.class)) {
-					values.put(fieldName, (Integer) value);
-				}
-				else if (fieldType.equals(Long.class) || fieldType.equals(long.class)) {
-					values.put(fieldName, (Long) value);
-				}
-				else if (fieldType.equals(Float.class) || fieldType.equals(float.class)) {
-					values.put(fieldName, (Float) value);
-				}
-				else if (fieldType.equals(Double.class) || fieldType.equals(double.class)) {
-					values.put(fieldName, (Double) value);
-				}
-				else if (fieldType.equals(Boolean.class) || fieldType.equals(boolean.class)) {
-					values.put(fieldName, (Boolean) value);
-				}
-				else if (fieldType.equals(Character.class) || fieldType.equals(char.class)) {
-					values.put(fieldName, value.toString());
-				}
-				else if (fieldType.equals(String.class)) {
-					values.put(fieldName, value.toString());
-				}
-				else if (fieldType.equals(Byte[].class) || fieldType.equals(byte[].class)) {
-					values.put(fieldName, (byte[]) value);
-				}
-				else if (ReflectionUtils.isModel(fieldType)) {
-					values.put(fieldName, ((Model) value).getId());
-				}
-				else if (ReflectionUtils.isSubclassOf(fieldType, Enum.class)) {
-					values.put(fieldName, ((Enum<?>) value).name());
-				}
+				column.put(this, values);
 			}
 			catch (IllegalArgumentException e) {
 				Log.e(e.getClass().getName(), e);
@@ -240,63 +199,84 @@ public abstract class Model implements com.novoda.notils.cursor.SimpleCursorList
 	@SuppressLint("NewApi")
 	public Long save() {
 		if (!enable) return mId;
-		final ContentValues values = toContentValues();
-
-		// TODO optimize the following code snippet
-		if (mSpecificId != null && mReplace) { // replace
-			mId = mSpecificId;
-			values.put("Id", mId);
-			if (!ActiveAndroid.inContentProvider()) {
-				SQLiteUtils.replace(mTableInfo.getTableName(), null, values);
-			} else {
-				Model m = load(mTableInfo.getType(), mId);
-				if (m == null) {
-					Cache.getContext().getContentResolver().insert(ContentProvider.createUri(mTableInfo.getType(), null), values);
-				} else {
-					Cache.getContext().getContentResolver().update(ContentProvider.createUri(mTableInfo.getType(), null), values, "Id=" + mId, null);
-				}
-			}
-		} else if (mId == null) { // insert
-			if (mSpecificId != null && !mReplace) {
+		final boolean inContentProvider = ActiveAndroid.inContentProvider();
+		if (!inContentProvider && WriteQueue.isGroupCommit()) {
+			return WriteQueue.execute(new Callable<Long>() {
+				@Override
+				public Long call() {
+					return save();
+				}
+			});
+		}
+
+		// Only the ContentProvider path needs ContentValues, the rest binds compiled statements
+		final ContentValues values = inContentProvider ? toContentValues() : null;
+		// Inside saveAll() the batch owns the statements and the notification
+		final BulkSave bulk = inContentProvider ? null : sBulkSave.get();
+		final ModelWriter writer = inContentProvider ? null
+				: (bulk != null ? bulk.getWriter(mTableInfo) : new ModelWriter(mTableInfo));
+
+		try {
+			// TODO optimize the following code snippet
+			if (mSpecificId != null && mReplace) { // replace
 				mId = mSpecificId;
-				values.put("Id", mId);
-				if (!ActiveAndroid.inContentProvider()) {
-					SQLiteUtils.insert(mTableInfo.getTableName(), null, values);
+				if (!inContentProvider) {
+					executeInsert(writer, true);
 				} else {
-					Cache.getContext().getContentResolver().insert(ContentProvider.createUri(mTableInfo.getType(), null), values);
+					values.put("Id", mId);
+					Model m = load(mTableInfo.getType(), mId);
+					if (m == null) {
+						Cache.getContext().getContentResolver().insert(ContentProvider.createUri(mTableInfo.getType(), null), values);
+					} else {
+						Cache.getContext().getContentResolver().update(ContentProvider.createUri(mTableInfo.getType(), null), values, "Id=" + mId, null);
+					}
 				}
-			} else {
-				if (!ActiveAndroid.inContentProvider()) {
-					mId = SQLiteUtils.insert(mTableInfo.getTableName(), null, values);
+			} else if (mId == null) { // insert
+				if (mSpecificId != null && !mReplace) {
+					mId = mSpecificId;
+					if (!inContentProvider) {
+						executeInsert(writer, false);
+					} else {
+						values.put("Id", mId);
+						Cache.getContext().getContentResolver().insert(ContentProvider.createUri(mTableInfo.getType(), null), values);
+					}
 				} else {
-					Uri uri = Cache.getContext().getContentResolver().insert(ContentProvider.createUri(mTableInfo.getType(), null), values);
-					if (uri != null) mId = android.content.ContentUris.parseId(uri);
+					if (!inContentProvider) {
+						mId = executeInsert(writer, false);
+					} else {
+						Uri uri = Cache.getContext().getContentResolver().insert(ContentProvider.createUri(mTableInfo.getType(), null), values);
+						if (uri != null) mId = android.content.ContentUris.parseId(uri);
+					}
 				}
-			}
-		} else { // update for mId
-			if (mDeleted) {
-				return new Long(-1);
-			}
-
-			if (mSpecificId != null && !mReplace) {
-				if (!ActiveAndroid.inContentProvider()) {
-					delete();
-					mId = mSpecificId;
-					values.put("Id", mId);
-					SQLiteUtils.insert(mTableInfo.getTableName(), null, values);
+			} else { // update for mId
+				if (mDeleted) {
+					return new Long(-1);
+				}
+
+				if (mSpecificId != null && !mReplace) {
+					if (!inContentProvider) {
+						delete();
+						mId = mSpecificId;
+						executeInsert(writer, false);
+					} else {
+						// FIXME for inContentProvider
+						delete();
+						mId = mSpecificId;
+						values.put("Id", mId);
+						Cache.getContext().getContentResolver().insert(ContentProvider.createUri(mTableInfo.getType(), null), values);
+					}
 				} else {
-					// FIXME for inContentProvider
-					delete();
-					mId = mSpecificId;
-					values.put("Id", mId);
-					Cache.getContext().getContentResolver().insert(ContentProvider.createUri(mTableInfo.getType(), null), values);
+				if (!inContentProvider) {
+					executeUpdate(writer);
+				} else {
+					Cache.getContext().getContentResolver().update(ContentProvider.createUri(mTableInfo.getType(), null), values, "Id=" + mId, null);
+				}
 				}
-			} else {
-			if (!ActiveAndroid.inContentProvider()) {
-				SQLiteUtils.update(mTableInfo.getTableName(), values, "Id=" + mId, null);
-			} else {
-				Cache.getContext().getContentResolver().update(ContentProvider.createUri(mTableInfo.getType(), null), values, "Id=" + mId, null);
 			}
+		}
+		finally {
+			if (writer != null && bulk == null) {
+				writer.release();
 			}
 		}
 
@@ -304,11 +284,183 @@ public abstract class Model implements com.novoda.notils.cursor.SimpleCursorList
 			Cache.addEntity(this);
 		}
 
-		Cache.getContext().getContentResolver()
-				.notifyChange(ContentProvider.createUri(mTableInfo.getType(), mId), null);
+		if (bulk != null) {
+			bulk.addChange(mTableInfo.getType());
+			return mId;
+		}
+
+		Cache.notifyChange(mTableInfo.getType(), mId);
 		return mId;
 	}
 
+	/**
+	 * Queue the save on the {@link WriteQueue}. Don't modify the model until the
+	 * returned future completes.
+	 *
+	 * @return the id the model was saved with
+	 */
+	public final Future<Long> saveAsync() {
+		return saveAsync(null);
+	}
+
+	/**
+	 * @param callback called on the main thread once the save is committed, may be
+	 *        null
+	 */
+	public final Future<Long> saveAsync(WriteQueue.Callback<Long> callback) {
+		return WriteQueue.submit(new Callable<Long>() {
+			@Override
+			public Long call() {
+				return save();
+			}
+		}, callback);
+	}
+
+	/**
+	 * Queue the delete on the {@link WriteQueue}.
+	 */
+	public final Future<Void> deleteAsync() {
+		return deleteAsync(null);
+	}
+
+	public final Future<Void> deleteAsync(WriteQueue.Callback<Void> callback) {
+		return WriteQueue.submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				delete();
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Save the models table by table inside one transaction, reusing one compiled
+	 * statement per table. The transaction is committed every
+	 * {@link #DEFAULT_CHUNK_SIZE} rows and one change notification is sent per table.
+	 * Should a chunk fail, the tables of the chunks committed before it are notified
+	 * all the same.
+	 */
+	public static void saveAll(Collection<? extends Model> models) {
+		saveAll(models, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param chunkSize rows per committed transaction, positive. When called inside an
+	 *        outer transaction nothing is committed until the outer transaction is.
+	 */
+	public static void saveAll(Collection<? extends Model> models, int chunkSize) {
+		checkChunkSize(chunkSize);
+		if (models.isEmpty()) {
+			return;
+		}
+
+		// Nested inside a save() override or going through the ContentProvider: plain saves
+		if (ActiveAndroid.inContentProvider() || sBulkSave.get() != null) {
+			for (Model model : models) {
+				model.save();
+			}
+			return;
+		}
+
+		final Map<TableInfo, List<Model>> groups = groupByTable(models, false);
+		final boolean nested = ActiveAndroid.inTransaction();
+		final BulkSave bulk = new BulkSave();
+		boolean successful = false;
+
+		sBulkSave.set(bulk);
+		ActiveAndroid.beginTransaction();
+		try {
+			int count = 0;
+			for (List<Model> group : groups.values()) {
+				for (Model model : group) {
+					model.save();
+
+					if (++count % chunkSize == 0 && !nested) {
+						commitChunk();
+						bulk.markCommitted();
+					}
+				}
+			}
+
+			ActiveAndroid.setTransactionSuccessful();
+			successful = true;
+		}
+		finally {
+			sBulkSave.remove();
+			bulk.release();
+			try {
+				ActiveAndroid.endTransaction();
+			}
+			finally {
+				bulk.notifyChanges(successful);
+			}
+		}
+	}
+
+	/**
+	 * Delete the models with one {@code Id IN (...)} statement per table and chunk.
+	 * Overrides of {@link #delete()} are not called.
+	 */
+	public static void deleteAll(Collection<? extends Model> models) {
+		deleteAll(models, DEFAULT_CHUNK_SIZE);
+	}
+
+	public static void deleteAll(Collection<? extends Model> models, int chunkSize) {
+		checkChunkSize(chunkSize);
+		final Map<TableInfo, List<Model>> groups = groupByTable(models, true);
+		if (groups.isEmpty()) {
+			return;
+		}
+
+		final int batchSize = Math.min(chunkSize, MAX_BIND_ARGUMENTS);
+		final boolean nested = ActiveAndroid.inTransaction();
+		// Only tracks the changed tables, deletes don't check out statements
+		final BulkSave bulk = new BulkSave();
+		boolean successful = false;
+
+		ActiveAndroid.beginTransaction();
+		try {
+			for (Map.Entry<TableInfo, List<Model>> entry : groups.entrySet()) {
+				final String tableName = entry.getKey().getTableName();
+				final List<Model> group = entry.getValue();
+				final int size = group.size();
+
+				for (int start = 0; start < size; start += batchSize) {
+					final int end = Math.min(start + batchSize, size);
+					final String[] ids = new String[end - start];
+					final StringBuilder where = new StringBuilder("Id IN (");
+
+					for (int i = start; i < end; i++) {
+						final Model model = group.get(i);
+						ids[i - start] = model.mId.toString();
+						where.append(i > start ? ",?" : "?");
+						Cache.removeEntity(model);
+					}
+					where.append(")");
+
+					SQLiteUtils.delete(tableName, where.toString(), ids);
+					bulk.addChange(entry.getKey().getType());
+
+					if (end < size && !nested) {
+						commitChunk();
+						bulk.markCommitted();
+					}
+				}
+			}
+
+			ActiveAndroid.setTransactionSuccessful();
+			successful = true;
+		}
+		finally {
+			try {
+				ActiveAndroid.endTransaction();
+			}
+			finally {
+				bulk.notifyChanges(successful);
+			}
+		}
+	}
+
 	// Convenience methods
 
 	public static void delete(Class<? extends Model> type, long id) {
@@ -356,6 +508,8 @@ public abstract class Model implements com.novoda.notils.cursor.SimpleCursorList
 	public static <T extends Model> T load(Class<T> type, long id) {
 		Model entity = Cache.getEntity(type, id);
 		if (entity != null) return (T) entity;
+		entity = ForeignKeyPrefetcher.lookup(type, id);
+		if (entity != null) return (T) entity;
 		if (ActiveAndroid.inContentProvider()) return loadByContentProvider(type, id);
 		else return loadByActiveAndroid(type, id);
 	}
@@ -394,9 +548,9 @@ public abstract class Model implements com.novoda.notils.cursor.SimpleCursorList
 			return;
 		}
 
-		for (Field field : mTableInfo.getFields()) {
+		for (ColumnInfo column : mTableInfo.getColumnPlan()) {
+			final Field field = column.getField();
 			try {
-				field.setAccessible(true);
 				field.set(this, field.get(model));
 			} catch (IllegalArgumentException e) {
 				e.printStackTrace();
@@ -407,85 +561,30 @@ public abstract class Model implements com.novoda.notils.cursor.SimpleCursorList
 	}
 
 	public final int loadFromCursor(Cursor cursor) {
+		return loadFromCursor(cursor, mTableInfo.getColumnIndices(cursor));
+	}
+
+	/**
+	 * @param columnIndices cursor indices in column plan order, see {@link TableInfo#getColumnIndices}
+	 * @return the number of columns not found in the cursor
+	 */
+	public final int loadFromCursor(Cursor cursor, int[] columnIndices) {
+		final ColumnInfo[] columns = mTableInfo.getColumnPlan();
+		final ModelBinder<Model> binder = mTableInfo.getBinder();
+		// With a binder only Id is left for us
+		final int size = (binder != null) ? 1 : columns.length;
 		int sizeOfColumnNotFound = 0;
 
-		for (Field field : mTableInfo.getFields()) {
-			final String fieldName = mTableInfo.getColumnName(field);
-			Class<?> fieldType = field.getType();
-			final int columnIndex = cursor.getColumnIndex(fieldName);
+		for (int i = 0; i < size; i++) {
+			final int columnIndex = columnIndices[i];
 
 			if (columnIndex < 0) {
 				sizeOfColumnNotFound++;
 				continue;
 			}
 
-			field.setAccessible(true);
-
 			try {
-				boolean columnIsNull = cursor.isNull(columnIndex);
-				TypeSerializer typeSerializer = Cache.getParserForType(fieldType);
-				Object value = null;
-
-				if (typeSerializer != null) {
-					fieldType = typeSerializer.getSerializedType();
-				}
-
-				// TODO: Find a smarter way to do this? This if block is necessary because we
-				// can't know the type until runtime.
-				if (columnIsNull) {
-					field = null;
-				}
-				else if (fieldType.equals(Byte.class) || fieldType.equals(byte.class)) {
-					value = cursor.getInt(columnIndex);
-				}
-				else if (fieldType.equals(Short.class) || fieldType.equals(short.class)) {
-					value = cursor.getInt(columnIndex);
-				}
-				else if (fieldType.equals(Integer.class) || fieldType.equals(int.class)) {
-					value = cursor.getInt(columnIndex);
-				}
-				else if (fieldType.equals(Long.class) || fieldType.equals(long.class)) {
-					value = cursor.getLong(columnIndex);
-				}
-				else if (fieldType.equals(Float.class) || fieldType.equals(float.class)) {
-					value = cursor.getFloat(columnIndex);
-				}
-				else if (fieldType.equals(Double.class) || fieldType.equals(double.class)) {
-					value = cursor.getDouble(columnIndex);
-				}
-				else if (fieldType.equals(Boolean.class) || fieldType.equals(boolean.class)) {
-					value = cursor.getInt(columnIndex) != 0;
-				}
-				else if (fieldType.equals(Character.class) || fieldType.equals(char.class)) {
-					value = cursor.getString(columnIndex).charAt(0);
-				}
-				else if (fieldType.equals(String.class)) {
-					value = cursor.getString(columnIndex);
-				}
-				else if (fieldType.equals(Byte[].class) || fieldType.equals(byte[].class)) {
-					value = cursor.getBlob(columnIndex);
-				}
-				else if (ReflectionUtils.isModel(fieldType)) {
-					final long entityId = cursor.getLong(columnIndex);
-					final Class<? extends Model> entityType = (Class<? extends Model>) fieldType;
-
-					value = Model.load(entityType, entityId);
-				}
-				else if (ReflectionUtils.isSubclassOf(fieldType, Enum.class)) {
-					@SuppressWarnings("rawtypes")
-					final Class<? extends Enum> enumType = (Class<? extends Enum>) fieldType;
-					value = Enum.valueOf(enumType, cursor.getString(columnIndex));
-				}
-
-				// Use a deserializer if one is available
-				if (typeSerializer != null && !columnIsNull) {
-					value = typeSerializer.deserialize(value);
-				}
-
-				// Set the field value
-				if (value != null) {
-					field.set(this, value);
-				}
+				columns[i].load(this, cursor, columnIndex);
 			}
 			catch (IllegalArgumentException e) {
 				Log.e(e.getClass().getName(), e);
@@ -498,9 +597,39 @@ public abstract class Model implements com.novoda.notils.cursor.SimpleCursorList
 			}
 		}
 
+		if (binder != null) {
+			sizeOfColumnNotFound += binder.load(this, cursor, columnIndices);
+		}
+
 		return sizeOfColumnNotFound;
 	}
 
+	/**
+	 * Like {@link #loadFromCursor(Cursor, int[])}, but NULL columns reset their field
+	 * to its value in a new instance instead of leaving it untouched, so one instance
+	 * can be refilled row after row.
+	 */
+	public final int refillFromCursor(Cursor cursor, int[] columnIndices) {
+		final ColumnInfo[] columns = mTableInfo.getColumnPlan();
+
+		for (int i = 0; i < columns.length; i++) {
+			final int columnIndex = columnIndices[i];
+			if (columnIndex >= 0 && cursor.isNull(columnIndex)) {
+				try {
+					columns[i].clear(this, mTableInfo.getPrototype());
+				}
+				catch (InstantiationException e) {
+					Log.e(e.getClass().getName(), e);
+				}
+				catch (IllegalAccessException e) {
+					Log.e(e.getClass().getName(), e);
+				}
+			}
+		}
+
+		return loadFromCursor(cursor, columnIndices);
+	}
+
 	public static void registerContentObserver(Class<? extends Model> type, boolean notifyForDescendents, ContentObserver observer) {
 		Cache.getContext().getContentResolver().registerContentObserver(
 				ContentProvider.createUri(type, null),
@@ -515,6 +644,148 @@ public abstract class Model implements com.novoda.notils.cursor.SimpleCursorList
 		return new Select().from(type).where(Cache.getTableName(type) + "." + foreignKey + "=?", getId()).execute();
 	}
 
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private long executeInsert(ModelWriter writer, boolean replace) {
+		final SQLiteStatement statement = writer.getInsertStatement(replace);
+		bindStatement(statement, mTableInfo.getInsertBindIndices());
+		return SQLiteUtils.executeInsert(statement);
+	}
+
+	private void executeUpdate(ModelWriter writer) {
+		final SQLiteStatement statement = writer.getUpdateStatement();
+		if (statement == null) {
+			// Nothing but Id to write
+			return;
+		}
+
+		bindStatement(statement, mTableInfo.getUpdateBindIndices());
+		SQLiteUtils.executeUpdate(statement);
+	}
+
+	/**
+	 * Group by table, keeping the order in which tables are first seen.
+	 *
+	 * @param savedOnly skip models without an Id
+	 */
+	private static Map<TableInfo, List<Model>> groupByTable(Collection<? extends Model> models, boolean savedOnly) {
+		final Map<TableInfo, List<Model>> groups = new LinkedHashMap<TableInfo, List<Model>>();
+
+		for (Model model : models) {
+			if (savedOnly && model.mId == null) {
+				continue;
+			}
+
+			List<Model> group = groups.get(model.mTableInfo);
+			if (group == null) {
+				group = new ArrayList<Model>();
+				groups.put(model.mTableInfo, group);
+			}
+			group.add(model);
+		}
+
+		return groups;
+	}
+
+	private static void checkChunkSize(int chunkSize) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunkSize must be positive, was " + chunkSize);
+		}
+	}
+
+	/**
+	 * Commit what the current chunk wrote and start over. yieldIfContendedSafely()
+	 * does that and lets waiting connections in if there are any.
+	 */
+	private static void commitChunk() {
+		final SQLiteDatabase db = Cache.openDatabase();
+
+		if (!db.yieldIfContendedSafely()) {
+			db.setTransactionSuccessful();
+			db.endTransaction();
+			db.beginTransaction();
+		}
+
+		Cache.yieldTransaction();
+	}
+
+	private void bindStatement(SQLiteStatement statement, int[] bindIndices) {
+		final ColumnInfo[] columns = mTableInfo.getColumnPlan();
+		final ModelBinder<Model> binder = mTableInfo.getBinder();
+		// With a binder only Id is left for us
+		final int size = (binder != null) ? 1 : columns.length;
+
+		for (int i = 0; i < size; i++) {
+			if (bindIndices[i] == 0) {
+				continue;
+			}
+
+			try {
+				columns[i].bind(this, statement, bindIndices[i]);
+			}
+			catch (IllegalArgumentException e) {
+				Log.e(e.getClass().getName(), e);
+			}
+			catch (IllegalAccessException e) {
+				Log.e(e.getClass().getName(), e);
+			}
+		}
+
+		if (binder != null) {
+			binder.bind(this, statement, bindIndices);
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * State of a running {@link #saveAll} or {@link #deleteAll}: the checked out
+	 * statements per table and the tables to notify once it's done.
+	 */
+	private static final class BulkSave {
+		private final Map<TableInfo, ModelWriter> mWriters = new HashMap<TableInfo, ModelWriter>();
+		private final Set<Class<? extends Model>> mChangedTypes = new LinkedHashSet<Class<? extends Model>>();
+		// Changed by chunks already committed, notified even if a later chunk fails
+		private final Set<Class<? extends Model>> mCommittedTypes = new LinkedHashSet<Class<? extends Model>>();
+
+		ModelWriter getWriter(TableInfo tableInfo) {
+			ModelWriter writer = mWriters.get(tableInfo);
+			if (writer == null) {
+				writer = new ModelWriter(tableInfo);
+				mWriters.put(tableInfo, writer);
+			}
+			return writer;
+		}
+
+		void addChange(Class<? extends Model> type) {
+			mChangedTypes.add(type);
+		}
+
+		void release() {
+			for (ModelWriter writer : mWriters.values()) {
+				writer.release();
+			}
+			mWriters.clear();
+		}
+
+		void markCommitted() {
+			mCommittedTypes.addAll(mChangedTypes);
+		}
+
+		/**
+		 * @param successful false to notify only the tables of committed chunks
+		 */
+		void notifyChanges(boolean successful) {
+			for (Class<? extends Model> type : successful ? mChangedTypes : mCommittedTypes) {
+				Cache.notifyChange(type, null);
+			}
+		}
+	}
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// OVERRIDEN METHODS
 	//////////////////////////////////////////////////////////////////////////////////////
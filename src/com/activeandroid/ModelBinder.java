@@ -0,0 +1,303 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import com.activeandroid.serializer.TypeSerializer;
+import com.activeandroid.util.Log;
+import com.activeandroid.util.ReflectionUtils;
+
+/**
+ * Field accessors for a model, generated at compile time by the ActiveAndroid
+ * annotation processor as {@code <ModelClass>$$ModelBinder}. When a binder is
+ * present {@link Model} uses it instead of reflection. The {@code Id} column is
+ * always handled by {@link Model} itself.
+ */
+public abstract class ModelBinder<T extends Model> {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public static final String SUFFIX = "$$ModelBinder";
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Put every writable column except {@code Id} into values.
+	 */
+	public abstract void bind(T model, ContentValues values);
+
+	/**
+	 * Bind every column except {@code Id} to a compiled insert or update statement.
+	 *
+	 * @param bindIndices statement parameter index per column, laid out like the
+	 *        columnIndices of {@link #load}; 0 means the column isn't bound
+	 */
+	public abstract void bind(T model, SQLiteStatement statement, int[] bindIndices);
+
+	/**
+	 * @return every column except {@code Id}, in the order used by {@link #load}
+	 */
+	public abstract String[] getColumnNames();
+
+	/**
+	 * Read every column except {@code Id} from the current cursor row.
+	 *
+	 * @param columnIndices cursor indices from {@link TableInfo#getColumnIndices}: Id
+	 *        first, then the columns of {@link #getColumnNames} in order
+	 * @return the number of columns not found in the cursor
+	 */
+	public abstract int load(T model, Cursor cursor, int[] columnIndices);
+
+	@SuppressWarnings("unchecked")
+	public static <T extends Model> ModelBinder<T> find(Class<T> type) {
+		try {
+			final Class<?> binderType = Class.forName(type.getName() + SUFFIX, true, type.getClassLoader());
+			return (ModelBinder<T>) binderType.newInstance();
+		}
+		catch (ClassNotFoundException e) {
+			return null;
+		}
+		catch (InstantiationException e) {
+			Log.e("Couldn't instantiate ModelBinder.", e);
+		}
+		catch (IllegalAccessException e) {
+			Log.e("IllegalAccessException", e);
+		}
+
+		return null;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return true if generated code reads and writes fields of fieldType inline,
+	 *         without looking up a registered {@link TypeSerializer}. Mirrors the
+	 *         processor's choice.
+	 */
+	static boolean isInlined(Class<?> fieldType) {
+		return fieldType.isPrimitive() || fieldType.equals(String.class) || fieldType.equals(byte[].class)
+				|| fieldType.equals(Boolean.class) || fieldType.equals(Byte.class) || fieldType.equals(Short.class)
+				|| fieldType.equals(Integer.class) || fieldType.equals(Long.class) || fieldType.equals(Float.class)
+				|| fieldType.equals(Double.class) || fieldType.equals(Character.class) || fieldType.isEnum()
+				|| fieldType.equals(Ref.class) || ReflectionUtils.isModel(fieldType);
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PROTECTED METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Generated code handles primitives, boxed types, String, byte[], models, refs and enums
+	// inline. Everything else goes through the helpers below and the registered
+	// TypeSerializers.
+
+	protected static void put(ContentValues values, String column, Class<?> fieldType, Object value) {
+		if (value != null) {
+			final TypeSerializer typeSerializer = Cache.getParserForType(fieldType);
+			if (typeSerializer != null) {
+				value = typeSerializer.serialize(value);
+			}
+		}
+
+		if (value == null) {
+			values.putNull(column);
+		}
+		else if (value instanceof Byte) {
+			values.put(column, (Byte) value);
+		}
+		else if (value instanceof Short) {
+			values.put(column, (Short) value);
+		}
+		else if (value instanceof Integer) {
+			values.put(column, (Integer) value);
+		}
+		else if (value instanceof Long) {
+			values.put(column, (Long) value);
+		}
+		else if (value instanceof Float) {
+			values.put(column, (Float) value);
+		}
+		else if (value instanceof Double) {
+			values.put(column, (Double) value);
+		}
+		else if (value instanceof Boolean) {
+			values.put(column, (Boolean) value);
+		}
+		else if (value instanceof byte[]) {
+			values.put(column, (byte[]) value);
+		}
+		else if (value instanceof Model) {
+			values.put(column, ((Model) value).getId());
+		}
+		else if (value instanceof Ref) {
+			values.put(column, ((Ref<?>) value).getId());
+		}
+		else if (value instanceof Enum) {
+			values.put(column, ((Enum<?>) value).name());
+		}
+		else {
+			values.put(column, value.toString());
+		}
+	}
+
+	protected static void bindLong(SQLiteStatement statement, int index, Number value) {
+		if (value == null) {
+			statement.bindNull(index);
+		}
+		else {
+			statement.bindLong(index, value.longValue());
+		}
+	}
+
+	protected static void bindDouble(SQLiteStatement statement, int index, Number value) {
+		if (value == null) {
+			statement.bindNull(index);
+		}
+		else {
+			statement.bindDouble(index, value.doubleValue());
+		}
+	}
+
+	protected static void bindBoolean(SQLiteStatement statement, int index, Boolean value) {
+		if (value == null) {
+			statement.bindNull(index);
+		}
+		else {
+			statement.bindLong(index, value ? 1 : 0);
+		}
+	}
+
+	protected static void bindString(SQLiteStatement statement, int index, Object value) {
+		if (value == null) {
+			statement.bindNull(index);
+		}
+		else {
+			statement.bindString(index, value.toString());
+		}
+	}
+
+	protected static void bindBlob(SQLiteStatement statement, int index, byte[] value) {
+		if (value == null) {
+			statement.bindNull(index);
+		}
+		else {
+			statement.bindBlob(index, value);
+		}
+	}
+
+	protected static void bindModel(SQLiteStatement statement, int index, Model value) {
+		bindLong(statement, index, value != null ? value.getId() : null);
+	}
+
+	protected static void bindRef(SQLiteStatement statement, int index, Ref<?> value) {
+		bindLong(statement, index, value != null ? value.getId() : null);
+	}
+
+	protected static void bindEnum(SQLiteStatement statement, int index, Enum<?> value) {
+		bindString(statement, index, value != null ? value.name() : null);
+	}
+
+	protected static void bind(SQLiteStatement statement, int index, Class<?> fieldType, Object value) {
+		if (value != null) {
+			final TypeSerializer typeSerializer = Cache.getParserForType(fieldType);
+			if (typeSerializer != null) {
+				value = typeSerializer.serialize(value);
+			}
+		}
+
+		if (value == null) {
+			statement.bindNull(index);
+		}
+		else if (value instanceof Float || value instanceof Double) {
+			statement.bindDouble(index, ((Number) value).doubleValue());
+		}
+		else if (value instanceof Number) {
+			statement.bindLong(index, ((Number) value).longValue());
+		}
+		else if (value instanceof Boolean) {
+			bindBoolean(statement, index, (Boolean) value);
+		}
+		else if (value instanceof byte[]) {
+			statement.bindBlob(index, (byte[]) value);
+		}
+		else if (value instanceof Model) {
+			bindModel(statement, index, (Model) value);
+		}
+		else if (value instanceof Ref) {
+			bindRef(statement, index, (Ref<?>) value);
+		}
+		else if (value instanceof Enum) {
+			bindEnum(statement, index, (Enum<?>) value);
+		}
+		else {
+			statement.bindString(index, value.toString());
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected static Object get(Cursor cursor, int columnIndex, Class<?> fieldType) {
+		final TypeSerializer typeSerializer = Cache.getParserForType(fieldType);
+		Class<?> type = typeSerializer != null ? typeSerializer.getSerializedType() : fieldType;
+		Object value;
+
+		if (type.equals(Byte.class) || type.equals(byte.class)
+				|| type.equals(Short.class) || type.equals(short.class)
+				|| type.equals(Integer.class) || type.equals(int.class)) {
+			value = cursor.getInt(columnIndex);
+		}
+		else if (type.equals(Long.class) || type.equals(long.class)) {
+			value = cursor.getLong(columnIndex);
+		}
+		else if (type.equals(Float.class) || type.equals(float.class)) {
+			value = cursor.getFloat(columnIndex);
+		}
+		else if (type.equals(Double.class) || type.equals(double.class)) {
+			value = cursor.getDouble(columnIndex);
+		}
+		else if (type.equals(Boolean.class) || type.equals(boolean.class)) {
+			value = cursor.getInt(columnIndex) != 0;
+		}
+		else if (type.equals(Character.class) || type.equals(char.class)) {
+			value = cursor.getString(columnIndex).charAt(0);
+		}
+		else if (type.equals(Byte[].class) || type.equals(byte[].class)) {
+			value = cursor.getBlob(columnIndex);
+		}
+		else if (ReflectionUtils.isModel(type)) {
+			value = Model.load((Class<? extends Model>) type, cursor.getLong(columnIndex));
+		}
+		else if (ReflectionUtils.isSubclassOf(type, Enum.class)) {
+			value = Enum.valueOf((Class<? extends Enum>) type, cursor.getString(columnIndex));
+		}
+		else {
+			value = cursor.getString(columnIndex);
+		}
+
+		if (typeSerializer != null) {
+			value = typeSerializer.deserialize(value);
+		}
+
+		return value;
+	}
+}
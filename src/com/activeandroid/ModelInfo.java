@@ -45,9 +45,9 @@ final class ModelInfo {
 	// PRIVATE METHODS
 	//////////////////////////////////////////////////////////////////////////////////////
 
-	private Map<Class<? extends Model>, TableInfo> mTableInfos = new HashMap<Class<? extends Model>, TableInfo>();
+	private final Map<Class<? extends Model>, TableInfo> mTableInfos = new HashMap<Class<? extends Model>, TableInfo>();
 	@SuppressWarnings("serial")
-	private Map<Class<?>, TypeSerializer> mTypeSerializers = new HashMap<Class<?>, TypeSerializer>() {
+	private final Map<Class<?>, TypeSerializer> mTypeSerializers = new HashMap<Class<?>, TypeSerializer>() {
 		{
 			put(Calendar.class, new CalendarSerializer());
 			put(java.sql.Date.class, new SqlDateSerializer());
@@ -71,6 +71,10 @@ final class ModelInfo {
 			}
 		}
 
+		for (TableInfo tableInfo : mTableInfos.values()) {
+			tableInfo.createColumnPlan(this);
+		}
+
 		Log.i("ModelInfo loaded.");
 	}
 
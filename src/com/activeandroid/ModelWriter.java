@@ -0,0 +1,89 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * The compiled write statements of one table, checked out of the table's pools for
+ * a single save or for a whole {@link Model#saveAll} batch.
+ */
+final class ModelWriter {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final SQLiteDatabase mDatabase;
+	private final TableInfo mTableInfo;
+
+	private SQLiteStatement mInsertStatement;
+	private SQLiteStatement mReplaceStatement;
+	private SQLiteStatement mUpdateStatement;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	ModelWriter(TableInfo tableInfo) {
+		mDatabase = Cache.openDatabase();
+		mTableInfo = tableInfo;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	SQLiteStatement getInsertStatement(boolean replace) {
+		if (replace) {
+			if (mReplaceStatement == null) {
+				mReplaceStatement = mTableInfo.getReplaceStatements().acquire(mDatabase);
+			}
+			return mReplaceStatement;
+		}
+
+		if (mInsertStatement == null) {
+			mInsertStatement = mTableInfo.getInsertStatements().acquire(mDatabase);
+		}
+		return mInsertStatement;
+	}
+
+	/**
+	 * @return null if the table has no column besides Id to update
+	 */
+	SQLiteStatement getUpdateStatement() {
+		if (mUpdateStatement == null && mTableInfo.getUpdateStatements() != null) {
+			mUpdateStatement = mTableInfo.getUpdateStatements().acquire(mDatabase);
+		}
+		return mUpdateStatement;
+	}
+
+	void release() {
+		if (mInsertStatement != null) {
+			mTableInfo.getInsertStatements().release(mDatabase, mInsertStatement);
+			mInsertStatement = null;
+		}
+		if (mReplaceStatement != null) {
+			mTableInfo.getReplaceStatements().release(mDatabase, mReplaceStatement);
+			mReplaceStatement = null;
+		}
+		if (mUpdateStatement != null) {
+			mTableInfo.getUpdateStatements().release(mDatabase, mUpdateStatement);
+			mUpdateStatement = null;
+		}
+	}
+}
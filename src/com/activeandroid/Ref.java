@@ -0,0 +1,117 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Lazy reference to another model, for use as a column type instead of the model
+ * itself. Marshalling a row only stores the foreign id; the referenced model is
+ * loaded on the first call to {@link #get()}.
+ *
+ * <pre>
+ * &#64;Column(name = "Customer")
+ * public Ref&lt;Customer&gt; customer;
+ * </pre>
+ */
+public final class Ref<T extends Model> {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final Class<T> mType;
+	private final Long mId;
+
+	private T mModel;
+	private boolean mLoaded;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private Ref(Class<T> type, Long id, T model, boolean loaded) {
+		mType = type;
+		mId = id;
+		mModel = model;
+		mLoaded = loaded;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public static <T extends Model> Ref<T> to(Class<T> type, long id) {
+		return new Ref<T>(type, id, null, false);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T extends Model> Ref<T> of(T model) {
+		return new Ref<T>((Class<T>) model.getClass(), null, model, true);
+	}
+
+	public Class<T> getType() {
+		return mType;
+	}
+
+	/**
+	 * @return the referenced id, without loading the model
+	 */
+	public Long getId() {
+		return mModel != null ? mModel.getId() : mId;
+	}
+
+	/**
+	 * @return the referenced model, loaded on first access. Null if it doesn't exist.
+	 */
+	public synchronized T get() {
+		if (!mLoaded) {
+			mModel = Model.load(mType, mId);
+			mLoaded = true;
+		}
+
+		return mModel;
+	}
+
+	public synchronized boolean isLoaded() {
+		return mLoaded;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// OVERRIDEN METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Ref)) {
+			return false;
+		}
+
+		final Ref<?> other = (Ref<?>) obj;
+		final Long id = getId();
+
+		return id != null && mType.equals(other.mType) && id.equals(other.getId());
+	}
+
+	@Override
+	public int hashCode() {
+		final Long id = getId();
+		return mType.hashCode() * 31 + (id != null ? id.hashCode() : 0);
+	}
+
+	@Override
+	public String toString() {
+		return "Ref<" + mType.getSimpleName() + ">@" + getId();
+	}
+}
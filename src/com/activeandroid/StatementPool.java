@@ -0,0 +1,98 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Idle compiled statements for one SQL string. A statement is checked out for the
+ * duration of a bind and execute, so no lock is held while SQLite runs it and
+ * concurrent writers simply compile another copy.
+ */
+final class StatementPool {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final int MAX_IDLE = 4;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final String mSql;
+	private final List<SQLiteStatement> mIdle = new ArrayList<SQLiteStatement>(MAX_IDLE);
+	private SQLiteDatabase mDatabase;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	StatementPool(String sql) {
+		mSql = sql;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	String getSql() {
+		return mSql;
+	}
+
+	SQLiteStatement acquire(SQLiteDatabase db) {
+		synchronized (this) {
+			if (db != mDatabase) {
+				close();
+				mDatabase = db;
+			}
+
+			final int size = mIdle.size();
+			if (size > 0) {
+				return mIdle.remove(size - 1);
+			}
+		}
+
+		return db.compileStatement(mSql);
+	}
+
+	void release(SQLiteDatabase db, SQLiteStatement statement) {
+		statement.clearBindings();
+
+		synchronized (this) {
+			if (db == mDatabase && mIdle.size() < MAX_IDLE) {
+				mIdle.add(statement);
+				return;
+			}
+		}
+
+		statement.close();
+	}
+
+	synchronized void close() {
+		for (SQLiteStatement statement : mIdle) {
+			statement.close();
+		}
+
+		mIdle.clear();
+		mDatabase = null;
+	}
+}
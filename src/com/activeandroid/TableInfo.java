@@ -17,6 +17,8 @@ package com.activeandroid;
  */
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -25,13 +27,23 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import android.database.Cursor;
 import android.text.TextUtils;
 
 import com.activeandroid.annotation.Column;
 import com.activeandroid.annotation.Table;
+import com.activeandroid.annotation.Table.CachePolicy;
+import com.activeandroid.util.Log;
 import com.activeandroid.util.ReflectionUtils;
 
 public final class TableInfo {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Object header plus the fields Model itself declares
+	private static final int MODEL_SIZE = 40;
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// PRIVATE MEMBERS
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -41,10 +53,31 @@ public final class TableInfo {
 	private String mModule;
 	private String mSchema;
 
+	private CachePolicy mCachePolicy = CachePolicy.DEFAULT;
+	private int mCacheSize = -1;
+	private long mCacheTtl = 0;
+
 	private Map<Field, String> mColumnNames = new LinkedHashMap<Field, String>();
 	private Map<String, Column> mColumns = new HashMap<String, Column>();
 	private Map<String, Boolean> mReadOnlyColumns = new HashMap<String, Boolean>();
 
+	private ModelBinder<? extends Model> mBinder;
+
+	// Id first, then the remaining columns (in binder order when a binder exists)
+	private ColumnInfo[] mColumnPlan;
+
+	// Compiled writes used by Model.save(), bound in column plan order
+	private StatementPool mInsertStatements;
+	private StatementPool mReplaceStatements;
+	private StatementPool mUpdateStatements;
+	private int[] mInsertBindIndices;
+	private int[] mUpdateBindIndices;
+
+	private EntityCache mEntityCache;
+
+	// Created on first use, see getPrototype()
+	private volatile Model mPrototype;
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -56,6 +89,9 @@ public final class TableInfo {
 		if (tableAnnotation != null) {
 			mTableName = tableAnnotation.name();
 			mModule = tableAnnotation.module();
+			mCachePolicy = tableAnnotation.cachePolicy();
+			mCacheSize = tableAnnotation.cacheSize();
+			mCacheTtl = tableAnnotation.cacheTtl();
 		}
 		else {
 			mTableName = type.getSimpleName();
@@ -75,6 +111,8 @@ public final class TableInfo {
                         mColumns.put(columnName, columnAnnotation);
                         mReadOnlyColumns.put(columnName, columnAnnotation.readOnly());
 		}
+
+		mBinder = ModelBinder.find(type);
 	}
 
 	public String getSchema() {
@@ -101,6 +139,18 @@ public final class TableInfo {
 		return mModule;
 	}
 
+	public CachePolicy getCachePolicy() {
+		return mCachePolicy;
+	}
+
+	public int getCacheSize() {
+		return mCacheSize;
+	}
+
+	public long getCacheTtl() {
+		return mCacheTtl;
+	}
+
 	public Collection<Field> getFields() {
 		return mColumnNames.keySet();
 	}
@@ -116,4 +166,240 @@ public final class TableInfo {
 	public boolean isReadOnlyColumn(String name) {
 		return mReadOnlyColumns.get(name);
 	}
+
+	public List<ColumnInfo> getColumnInfos() {
+		return Collections.unmodifiableList(Arrays.asList(mColumnPlan));
+	}
+
+	/**
+	 * Resolve the cursor index of every planned column, in plan order. Missing
+	 * columns are -1. Do this once per cursor, not per row.
+	 */
+	public int[] getColumnIndices(Cursor cursor) {
+		return getColumnIndices(cursor, "");
+	}
+
+	/**
+	 * Like {@link #getColumnIndices(Cursor)} for columns selected as prefix + name.
+	 */
+	public int[] getColumnIndices(Cursor cursor, String prefix) {
+		final int[] columnIndices = new int[mColumnPlan.length];
+		for (int i = 0; i < mColumnPlan.length; i++) {
+			columnIndices[i] = cursor.getColumnIndex(prefix + mColumnPlan[i].getName());
+		}
+
+		return columnIndices;
+	}
+
+	/**
+	 * @return the generated binder for this model, or null to fall back to reflection
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Model> ModelBinder<T> getBinder() {
+		return (ModelBinder<T>) mBinder;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	ColumnInfo[] getColumnPlan() {
+		return mColumnPlan;
+	}
+
+	StatementPool getInsertStatements() {
+		return mInsertStatements;
+	}
+
+	StatementPool getReplaceStatements() {
+		return mReplaceStatements;
+	}
+
+	/**
+	 * @return null if the table has no column besides Id to update
+	 */
+	StatementPool getUpdateStatements() {
+		return mUpdateStatements;
+	}
+
+	/**
+	 * Parameter index per planned column for the insert and replace statements, 0 if unbound.
+	 */
+	int[] getInsertBindIndices() {
+		return mInsertBindIndices;
+	}
+
+	/**
+	 * Parameter index per planned column for the update statement, 0 if unbound. Id is last.
+	 */
+	int[] getUpdateBindIndices() {
+		return mUpdateBindIndices;
+	}
+
+	/**
+	 * @return the approximate number of heap bytes a model of this table takes, used
+	 *         by the byte budgeted entity cache
+	 */
+	int estimateSize(Model model) {
+		int size = MODEL_SIZE;
+
+		for (ColumnInfo column : mColumnPlan) {
+			try {
+				size += column.estimateSize(model);
+			}
+			catch (IllegalAccessException e) {
+				Log.e(e.getClass().getName(), e);
+			}
+		}
+
+		return size;
+	}
+
+	EntityCache getEntityCache() {
+		return mEntityCache;
+	}
+
+	/**
+	 * @return a new instance of the table's model, created once and never modified,
+	 *         holding the values {@link ColumnInfo#clear} resets fields to
+	 */
+	Model getPrototype() throws InstantiationException, IllegalAccessException {
+		Model prototype = mPrototype;
+		if (prototype == null) {
+			prototype = mType.newInstance();
+			mPrototype = prototype;
+		}
+		return prototype;
+	}
+
+	void setEntityCache(EntityCache entityCache) {
+		mEntityCache = entityCache;
+	}
+
+	void closeStatements() {
+		mInsertStatements.close();
+		mReplaceStatements.close();
+		if (mUpdateStatements != null) {
+			mUpdateStatements.close();
+		}
+	}
+
+	/**
+	 * Called by {@link ModelInfo} once every TypeSerializer is known.
+	 */
+	void createColumnPlan(ModelInfo modelInfo) {
+		final List<ColumnInfo> columns = new ArrayList<ColumnInfo>();
+		ColumnInfo idColumn = null;
+
+		for (Map.Entry<Field, String> entry : mColumnNames.entrySet()) {
+			final Field field = entry.getKey();
+			final ColumnInfo column = new ColumnInfo(field, entry.getValue(), modelInfo.getTypeSerializer(field.getType()));
+
+			if (idColumn == null && column.getName().equals(Model.FIELD_ID)) {
+				idColumn = column;
+			}
+			else {
+				columns.add(column);
+			}
+		}
+
+		// Serializers are registered at runtime, the generated code can't know them
+		if (mBinder != null) {
+			for (ColumnInfo column : columns) {
+				if (column.getSerializer() != null && ModelBinder.isInlined(column.getField().getType())) {
+					Log.w("ModelBinder of " + mType.getName() + " ignores the TypeSerializer of column "
+							+ column.getName() + ", falling back to reflection.");
+					mBinder = null;
+					break;
+				}
+			}
+		}
+
+		if (mBinder != null) {
+			final List<ColumnInfo> ordered = orderByBinder(columns, mBinder.getColumnNames());
+			if (ordered != null) {
+				columns.clear();
+				columns.addAll(ordered);
+			}
+			else {
+				Log.w("ModelBinder of " + mType.getName() + " doesn't match its columns, falling back to reflection.");
+				mBinder = null;
+			}
+		}
+
+		if (idColumn != null) {
+			columns.add(0, idColumn);
+		}
+
+		mColumnPlan = columns.toArray(new ColumnInfo[columns.size()]);
+
+		createStatements();
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private void createStatements() {
+		final int size = mColumnPlan.length;
+		final List<String> insertColumns = new ArrayList<String>();
+		final List<String> updateColumns = new ArrayList<String>();
+
+		mInsertBindIndices = new int[size];
+		mUpdateBindIndices = new int[size];
+
+		for (int i = 0; i < size; i++) {
+			final ColumnInfo column = mColumnPlan[i];
+			if (!column.isWritable()) {
+				continue;
+			}
+
+			insertColumns.add(column.getName());
+			mInsertBindIndices[i] = insertColumns.size();
+
+			if (i > 0) {
+				updateColumns.add(column.getName() + "=?");
+				mUpdateBindIndices[i] = updateColumns.size();
+			}
+		}
+		mUpdateBindIndices[0] = updateColumns.size() + 1;
+
+		final String[] placeholders = new String[insertColumns.size()];
+		Arrays.fill(placeholders, "?");
+		final String insert = String.format("INTO %s (%s) VALUES (%s)", mTableName,
+				TextUtils.join(", ", insertColumns), TextUtils.join(", ", placeholders));
+
+		mInsertStatements = new StatementPool("INSERT " + insert);
+		mReplaceStatements = new StatementPool("INSERT OR REPLACE " + insert);
+		mUpdateStatements = updateColumns.isEmpty() ? null : new StatementPool(String.format(
+				"UPDATE %s SET %s WHERE %s=?", mTableName, TextUtils.join(", ", updateColumns), Model.FIELD_ID));
+	}
+
+	private static List<ColumnInfo> orderByBinder(List<ColumnInfo> columns, String[] names) {
+		if (names.length != columns.size()) {
+			return null;
+		}
+
+		final List<ColumnInfo> remaining = new LinkedList<ColumnInfo>(columns);
+		final List<ColumnInfo> ordered = new ArrayList<ColumnInfo>(names.length);
+
+		for (String name : names) {
+			ColumnInfo match = null;
+			for (ColumnInfo column : remaining) {
+				if (column.getName().equals(name)) {
+					match = column;
+					break;
+				}
+			}
+
+			if (match == null) {
+				return null;
+			}
+
+			remaining.remove(match);
+			ordered.add(match);
+		}
+
+		return ordered;
+	}
 }
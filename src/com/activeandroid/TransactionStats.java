@@ -0,0 +1,89 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Snapshot of the counters of {@link ActiveAndroid#runInTransaction}, see
+ * {@link ActiveAndroid#getTransactionStats()}. Nested calls are counted too; their
+ * time is included in their outer transaction's.
+ */
+public final class TransactionStats {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final long mTransactionCount;
+	private final long mRollbackCount;
+	private final long mRetryCount;
+	private final long mTotalTime;
+	private final long mMaxTime;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	TransactionStats(long transactionCount, long rollbackCount, long retryCount, long totalTime, long maxTime) {
+		mTransactionCount = transactionCount;
+		mRollbackCount = rollbackCount;
+		mRetryCount = retryCount;
+		mTotalTime = totalTime;
+		mMaxTime = maxTime;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public long getTransactionCount() {
+		return mTransactionCount;
+	}
+
+	/**
+	 * @return transactions and savepoints rolled back because their body threw
+	 */
+	public long getRollbackCount() {
+		return mRollbackCount;
+	}
+
+	/**
+	 * @return attempts repeated because the database was locked
+	 */
+	public long getRetryCount() {
+		return mRetryCount;
+	}
+
+	/**
+	 * @return milliseconds spent in outermost transactions, back-off included
+	 */
+	public long getTotalTime() {
+		return mTotalTime;
+	}
+
+	public long getMaxTime() {
+		return mMaxTime;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// OVERRIDEN METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String toString() {
+		return String.format("TransactionStats[transactions=%d,rollbacks=%d,retries=%d,totalTime=%d,maxTime=%d]",
+				mTransactionCount, mRollbackCount, mRetryCount, mTotalTime, mMaxTime);
+	}
+}
@@ -0,0 +1,403 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.activeandroid.util.Log;
+
+/**
+ * Runs writes on a single background thread. Whatever is queued while the writer is
+ * busy is committed together in one transaction, so a burst of
+ * {@link Model#saveAsync()} calls costs one commit instead of one per model.
+ * Operations run in the order they were submitted.
+ *
+ * <pre>
+ * item.saveAsync(new WriteQueue.Callback&lt;Long&gt;() {
+ *     public void onSuccess(Long id) { ... }
+ *     public void onFailure(Throwable error) { ... }
+ * });
+ * </pre>
+ *
+ * With a group commit window configured, see
+ * {@link Configuration.Builder#setGroupCommit}, the writer also keeps each
+ * transaction open for the window, and plain {@link Model#save()} and
+ * {@link com.activeandroid.util.SQLiteUtils#insert} style calls made outside a
+ * transaction are handed to it. They return once their row is written, before it's
+ * committed; {@link #sync()} tells when it is, and whether it was. With write-ahead
+ * logging queries read from other connections, so until the commit even the thread
+ * that saved a row doesn't find it; wait for sync() first where that matters.
+ */
+public final class WriteQueue {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Operations committed together at most, unless configured otherwise
+	public static final int MAX_BATCH_SIZE = Model.DEFAULT_CHUNK_SIZE;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final BlockingQueue<Operation<?>> sQueue = new LinkedBlockingQueue<Operation<?>>();
+
+	private static volatile Thread sWriter;
+	private static Handler sMainHandler;
+
+	// Writer thread only: the first commit failure since a sync() last ran
+	private static Throwable sUnreportedFailure;
+
+	// How long a transaction waits for more operations, 0 to commit what's queued
+	private static volatile long sWindowMillis = 0;
+	private static volatile int sBatchSize = MAX_BATCH_SIZE;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private WriteQueue() {
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public static <V> Future<V> submit(Callable<V> operation) {
+		return submit(operation, null);
+	}
+
+	/**
+	 * @param callback called on the main thread once the operation's transaction has
+	 *        committed or failed, may be null
+	 * @return completes once the operation's transaction has committed. It fails if
+	 *         the operation threw, or if the transaction couldn't be committed.
+	 */
+	public static <V> Future<V> submit(Callable<V> operation, Callback<V> callback) {
+		final Operation<V> task = new Operation<V>(operation, callback);
+		startWriter();
+		sQueue.add(task);
+		return task;
+	}
+
+	/**
+	 * @return completes once everything queued so far is committed. It fails with
+	 *         the error of the first transaction that failed since the previous
+	 *         sync(), including the writes of {@link #execute} calls that had
+	 *         already returned.
+	 */
+	public static Future<Void> sync() {
+		return sync(null);
+	}
+
+	public static Future<Void> sync(Callback<Void> callback) {
+		return submit(new SyncCallable(), callback);
+	}
+
+	/**
+	 * @return true if writes made outside a transaction should go through
+	 *         {@link #execute}, see {@link Configuration#getGroupCommitWindow()}
+	 */
+	public static boolean isGroupCommit() {
+		return sWindowMillis > 0 && Thread.currentThread() != sWriter && !ActiveAndroid.inTransaction();
+	}
+
+	/**
+	 * Run operation on the writer and wait until it has run, not until it's
+	 * committed. Exceptions thrown by the operation are rethrown.
+	 */
+	public static <V> V execute(Callable<V> operation) {
+		final Operation<V> task = new Operation<V>(operation, null);
+		startWriter();
+		sQueue.add(task);
+		return task.awaitExecution();
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	static void configure(Configuration configuration) {
+		sWindowMillis = Math.max(configuration.getGroupCommitWindow(), 0);
+		sBatchSize = configuration.getGroupCommitSize() > 0 ? configuration.getGroupCommitSize() : MAX_BATCH_SIZE;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static synchronized void startWriter() {
+		if (sWriter != null) {
+			return;
+		}
+
+		sMainHandler = new Handler(Looper.getMainLooper());
+		sWriter = new Thread("ActiveAndroid-Writer") {
+			@Override
+			public void run() {
+				final List<Operation<?>> batch = new ArrayList<Operation<?>>();
+				try {
+					while (true) {
+						try {
+							batch.add(sQueue.take());
+						}
+						catch (InterruptedException e) {
+							// The writer lives as long as the process
+							continue;
+						}
+
+						commit(batch);
+						batch.clear();
+					}
+				}
+				finally {
+					// Should the writer still die, the next submit starts another one
+					synchronized (WriteQueue.class) {
+						if (sWriter == this) {
+							sWriter = null;
+						}
+					}
+				}
+			}
+		};
+		sWriter.setDaemon(true);
+		sWriter.start();
+	}
+
+	/**
+	 * Run batch's first operation and whatever follows it within the window in one
+	 * transaction.
+	 */
+	private static void commit(List<Operation<?>> batch) {
+		final long deadline = SystemClock.uptimeMillis() + sWindowMillis;
+		final int batchSize = sBatchSize;
+		Throwable error = null;
+
+		try {
+			ActiveAndroid.beginTransaction();
+			try {
+				batch.get(0).execute();
+				while (batch.size() < batchSize) {
+					final long remaining = deadline - SystemClock.uptimeMillis();
+					Operation<?> next;
+					try {
+						next = remaining > 0 ? sQueue.poll(remaining, TimeUnit.MILLISECONDS) : sQueue.poll();
+					}
+					catch (InterruptedException e) {
+						next = null;
+					}
+					if (next == null) {
+						break;
+					}
+
+					batch.add(next);
+					next.execute();
+				}
+				ActiveAndroid.setTransactionSuccessful();
+			}
+			finally {
+				ActiveAndroid.endTransaction();
+			}
+		}
+		catch (Throwable e) {
+			// Errors too, or the batch's futures would never complete
+			Log.e(e.getClass().getName(), e);
+			error = e;
+		}
+
+		// A sync() in the batch fails along with it, otherwise the next one reports it
+		if (error != null && sUnreportedFailure == null && !containsSync(batch)) {
+			sUnreportedFailure = error;
+		}
+
+		for (Operation<?> operation : batch) {
+			try {
+				operation.complete(error);
+			}
+			catch (Throwable e) {
+				Log.e(e.getClass().getName(), e);
+			}
+		}
+	}
+
+	private static boolean containsSync(List<Operation<?>> batch) {
+		for (Operation<?> operation : batch) {
+			if (operation.mCallable instanceof SyncCallable) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public interface Callback<V> {
+		void onSuccess(V result);
+
+		void onFailure(Throwable error);
+	}
+
+	/**
+	 * Runs on the writer, reporting a commit failure of an earlier batch.
+	 */
+	private static final class SyncCallable implements Callable<Void> {
+		@Override
+		public Void call() throws Exception {
+			final Throwable failure = sUnreportedFailure;
+			sUnreportedFailure = null;
+
+			if (failure instanceof Exception) {
+				throw (Exception) failure;
+			}
+			else if (failure instanceof Error) {
+				throw (Error) failure;
+			}
+
+			return null;
+		}
+	}
+
+	/**
+	 * A queued operation. It's run inside the batch's transaction by execute() but only
+	 * completed, and its callback posted, after the transaction ends.
+	 */
+	private static final class Operation<V> extends FutureTask<V> {
+		private final Callable<V> mCallable;
+		private final Callback<V> mCallback;
+		private final CountDownLatch mExecuted = new CountDownLatch(1);
+
+		private V mResult;
+		private Throwable mError;
+
+		Operation(Callable<V> callable, Callback<V> callback) {
+			super(callable);
+			mCallable = callable;
+			mCallback = callback;
+		}
+
+		void execute() {
+			if (isCancelled()) {
+				mExecuted.countDown();
+				return;
+			}
+
+			// Every operation gets a savepoint, a failed one rolls back only its own
+			// writes and not the others of its batch
+			ActiveAndroid.beginTransaction();
+			try {
+				mResult = mCallable.call();
+				ActiveAndroid.setTransactionSuccessful();
+			}
+			catch (Throwable e) {
+				Log.e(e.getClass().getName(), e);
+				mError = e;
+			}
+			finally {
+				try {
+					ActiveAndroid.endTransaction();
+				}
+				finally {
+					mExecuted.countDown();
+				}
+			}
+		}
+
+		V awaitExecution() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					mExecuted.await();
+					break;
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+
+			if (mError instanceof RuntimeException) {
+				throw (RuntimeException) mError;
+			}
+			else if (mError instanceof Error) {
+				throw (Error) mError;
+			}
+			else if (mError != null) {
+				throw new RuntimeException(mError);
+			}
+
+			return mResult;
+		}
+
+		void complete(Throwable commitError) {
+			// Operations the failed transaction never reached
+			if (mExecuted.getCount() > 0 && commitError != null) {
+				mError = commitError;
+			}
+			mExecuted.countDown();
+
+			if (commitError != null) {
+				setException(commitError);
+			}
+			else if (mError != null) {
+				setException(mError);
+			}
+			else {
+				set(mResult);
+			}
+		}
+
+		@Override
+		protected void done() {
+			if (mCallback == null || isCancelled()) {
+				return;
+			}
+
+			sMainHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						mCallback.onSuccess(get());
+					}
+					catch (ExecutionException e) {
+						mCallback.onFailure(e.getCause());
+					}
+					catch (InterruptedException e) {
+						mCallback.onFailure(e);
+					}
+				}
+			});
+		}
+	}
+}
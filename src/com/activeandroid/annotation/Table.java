@@ -32,4 +32,33 @@ public @interface Table {
 	}
 
 	public String module() default "";
+
+	/*
+	 * How the entity cache holds models of this table. Every table has its own cache
+	 * region. A region bounded by cacheSize only evicts its own models; DEFAULT
+	 * regions under AA_CACHE_MAX_BYTES share the byte budget, and a busy table may
+	 * evict the models of another one down to its share of it.
+	 *
+	 * DEFAULT: as configured with AA_CACHE_SIZE or AA_CACHE_MAX_BYTES
+	 * NONE: models are never cached
+	 * STRONG: up to cacheSize models
+	 * WEAK, SOFT: up to cacheSize models, which the garbage collector may still reclaim
+	 *
+	 * Example:
+	 *
+	 * @Table(name = "Countries", cachePolicy = CachePolicy.STRONG, cacheSize = 300)
+	 * @Table(name = "Events", cachePolicy = CachePolicy.NONE)
+	 * @Table(name = "Prices", cacheTtl = 60000)
+	 */
+	public enum CachePolicy {
+		DEFAULT, NONE, STRONG, WEAK, SOFT
+	}
+
+	public CachePolicy cachePolicy() default CachePolicy.DEFAULT;
+
+	// Maximum number of cached models, -1 uses AA_CACHE_SIZE
+	public int cacheSize() default -1;
+
+	// Milliseconds a cached model stays valid, 0 for no limit
+	public long cacheTtl() default 0;
 }
@@ -25,6 +25,18 @@ public class Application extends android.app.Application {
 		ActiveAndroid.initialize(this);
 	}
 	
+	@Override
+	public void onTrimMemory(int level) {
+		super.onTrimMemory(level);
+		ActiveAndroid.trimMemory(level);
+	}
+
+	@Override
+	public void onLowMemory() {
+		super.onLowMemory();
+		ActiveAndroid.clearCache();
+	}
+
 	@Override
 	public void onTerminate() {
 		super.onTerminate();
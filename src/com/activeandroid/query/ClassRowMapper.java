@@ -0,0 +1,234 @@
+package com.activeandroid.query;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+
+import android.database.Cursor;
+
+import com.activeandroid.Cache;
+import com.activeandroid.serializer.TypeSerializer;
+import com.activeandroid.util.ReflectionUtils;
+
+/**
+ * Maps rows to instances of a class. A constructor taking one argument per selected
+ * column, in order, is preferred, so the class can be immutable. Otherwise the
+ * class needs a no-argument constructor and gets the fields named like the
+ * columns assigned.
+ * <p>
+ * Arguments and fields can be primitives, their boxes, String, byte[], enums, or
+ * types with a registered {@link TypeSerializer}.
+ */
+final class ClassRowMapper<R> implements RowMapper<R> {
+	private final Class<R> mType;
+
+	// Resolved for the last cursor seen
+	private Cursor mMappedCursor;
+	private Constructor<R> mConstructor;
+	private Class<?>[] mTypes;
+	private TypeSerializer[] mSerializers;
+	private Field[] mFields;
+
+	ClassRowMapper(Class<R> type) {
+		mType = type;
+	}
+
+	@Override
+	public R map(Cursor cursor) {
+		if (cursor != mMappedCursor) {
+			resolve(cursor);
+			mMappedCursor = cursor;
+		}
+
+		try {
+			if (mFields == null) {
+				final Object[] args = new Object[mTypes.length];
+				for (int i = 0; i < args.length; i++) {
+					args[i] = read(cursor, i, mTypes[i], mSerializers[i]);
+					if (args[i] == null && mTypes[i].isPrimitive()) {
+						args[i] = Array.get(Array.newInstance(mTypes[i], 1), 0);
+					}
+				}
+				return mConstructor.newInstance(args);
+			}
+
+			final R row = mConstructor.newInstance();
+			for (int i = 0; i < mFields.length; i++) {
+				if (mFields[i] != null) {
+					final Object value = read(cursor, i, mTypes[i], mSerializers[i]);
+					if (value != null || !mTypes[i].isPrimitive()) {
+						mFields[i].set(row, value);
+					}
+				}
+			}
+			return row;
+		}
+		catch (InstantiationException e) {
+			throw new IllegalArgumentException("Couldn't instantiate " + mType.getName(), e);
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Couldn't instantiate " + mType.getName(), e);
+		}
+		catch (InvocationTargetException e) {
+			throw new IllegalArgumentException("Couldn't instantiate " + mType.getName(), e.getCause());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void resolve(Cursor cursor) {
+		final int columnCount = cursor.getColumnCount();
+
+		// Skip constructors of the right arity whose arguments can't be read
+		for (Constructor<?> constructor : mType.getDeclaredConstructors()) {
+			final Class<?>[] types = constructor.getParameterTypes();
+			if (types.length == columnCount && columnCount > 0 && isReadable(types)) {
+				mConstructor = (Constructor<R>) constructor;
+				mConstructor.setAccessible(true);
+				mTypes = types;
+				mSerializers = getSerializers(types);
+				mFields = null;
+				return;
+			}
+		}
+
+		try {
+			mConstructor = mType.getDeclaredConstructor();
+			mConstructor.setAccessible(true);
+		}
+		catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(mType.getName() + " needs a constructor taking " + columnCount
+					+ " arguments of readable types, or none", e);
+		}
+
+		mTypes = new Class<?>[columnCount];
+		mFields = new Field[columnCount];
+		for (int i = 0; i < columnCount; i++) {
+			mFields[i] = findField(cursor.getColumnName(i));
+			if (mFields[i] == null) {
+				continue;
+			}
+
+			mTypes[i] = mFields[i].getType();
+			if (!isReadable(mTypes[i])) {
+				throw new IllegalArgumentException("Can't read column " + cursor.getColumnName(i) + " into "
+						+ mTypes[i].getName() + ", register a TypeSerializer for it");
+			}
+		}
+		mSerializers = getSerializers(mTypes);
+	}
+
+	private static boolean isReadable(Class<?>[] types) {
+		for (Class<?> type : types) {
+			if (!isReadable(type)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return true if {@link #read} can produce a value of type
+	 */
+	private static boolean isReadable(Class<?> type) {
+		return (type.isPrimitive() && !type.equals(void.class)) || type.equals(String.class)
+				|| type.equals(byte[].class) || type.equals(Long.class) || type.equals(Integer.class)
+				|| type.equals(Short.class) || type.equals(Byte.class) || type.equals(Double.class)
+				|| type.equals(Float.class) || type.equals(Boolean.class) || type.equals(Character.class)
+				|| ReflectionUtils.isSubclassOf(type, Enum.class) || Cache.getParserForType(type) != null;
+	}
+
+	private static TypeSerializer[] getSerializers(Class<?>[] types) {
+		final TypeSerializer[] serializers = new TypeSerializer[types.length];
+		for (int i = 0; i < types.length; i++) {
+			if (types[i] != null) {
+				serializers[i] = Cache.getParserForType(types[i]);
+			}
+		}
+
+		return serializers;
+	}
+
+	private Field findField(String name) {
+		for (Class<?> type = mType; type != null && type != Object.class; type = type.getSuperclass()) {
+			for (Field field : type.getDeclaredFields()) {
+				if (field.getName().equalsIgnoreCase(name) && !Modifier.isStatic(field.getModifiers())) {
+					field.setAccessible(true);
+					return field;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param serializer deserializes the value if not null, it's read as the
+	 *        serializer's serialized type then
+	 */
+	private static Object read(Cursor cursor, int columnIndex, Class<?> type, TypeSerializer serializer) {
+		if (serializer != null) {
+			return serializer.deserialize(read(cursor, columnIndex, serializer.getSerializedType()));
+		}
+
+		return read(cursor, columnIndex, type);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object read(Cursor cursor, int columnIndex, Class<?> type) {
+		if (cursor.isNull(columnIndex)) {
+			return null;
+		}
+
+		if (type.equals(long.class) || type.equals(Long.class)) {
+			return cursor.getLong(columnIndex);
+		}
+		else if (type.equals(int.class) || type.equals(Integer.class)) {
+			return cursor.getInt(columnIndex);
+		}
+		else if (type.equals(short.class) || type.equals(Short.class)) {
+			return cursor.getShort(columnIndex);
+		}
+		else if (type.equals(byte.class) || type.equals(Byte.class)) {
+			return (byte) cursor.getInt(columnIndex);
+		}
+		else if (type.equals(double.class) || type.equals(Double.class)) {
+			return cursor.getDouble(columnIndex);
+		}
+		else if (type.equals(float.class) || type.equals(Float.class)) {
+			return cursor.getFloat(columnIndex);
+		}
+		else if (type.equals(boolean.class) || type.equals(Boolean.class)) {
+			return cursor.getInt(columnIndex) != 0;
+		}
+		else if (type.equals(char.class) || type.equals(Character.class)) {
+			return cursor.getString(columnIndex).charAt(0);
+		}
+		else if (type.equals(byte[].class)) {
+			return cursor.getBlob(columnIndex);
+		}
+		else if (ReflectionUtils.isSubclassOf(type, Enum.class)) {
+			return Enum.valueOf((Class<? extends Enum>) type, cursor.getString(columnIndex));
+		}
+
+		return cursor.getString(columnIndex);
+	}
+}
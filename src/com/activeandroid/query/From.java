@@ -20,17 +20,23 @@ import android.database.Cursor;
 import android.text.TextUtils;
 import com.activeandroid.ActiveAndroid;
 import com.activeandroid.Cache;
+import com.activeandroid.ColumnInfo;
 import com.activeandroid.Model;
+import com.activeandroid.WriteQueue;
 import com.activeandroid.content.ContentProvider;
 import com.activeandroid.query.Join.JoinType;
+import com.activeandroid.util.ForeignKeyPrefetcher;
 import com.activeandroid.util.Log;
 import com.activeandroid.util.SQLiteUtils;
+import com.activeandroid.util.SQLiteUtils.Yield;
 import com.novoda.notils.cursor.CursorList;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 public final class From implements Sqlable {
 	private Sqlable mQueryBase;
@@ -51,8 +57,29 @@ public final class From implements Sqlable {
 	public static final String DESC = "DESC";
 	public static final String ASC = "ASC";
 
+	public static final int DEFAULT_PAGE_SIZE = 500;
+
+	public interface ModelCallback<T extends Model> {
+		/**
+		 * @return false to stop
+		 */
+		boolean onModel(T model);
+	}
+
 	private List<Object> mArguments;
 
+	// Model columns whose referenced rows are prefetched, see include()
+	private List<ColumnInfo> mIncludes;
+
+	// Whether joined models are hydrated from the same rows, see eager()
+	private boolean mEager;
+
+	// Keyset pagination, see after() and before(). No condition while mKeysetId is null.
+	private String mKeysetColumn;
+	private boolean mKeysetDescending;
+	private Object mKeysetValue;
+	private Long mKeysetId;
+
 	public From(Class<? extends Model> table, Sqlable queryBase) {
 		this(table, queryBase, null);
 	}
@@ -198,34 +225,148 @@ public final class From implements Sqlable {
 	}
 
 	public From offset(String offset) {
+		if (mKeysetColumn != null) {
+			throw new IllegalStateException("after(), before() and page() skip rows by seeking, an offset can't be combined with them");
+		}
+
 		mOffset = offset;
 		return this;
 	}
 
+	/**
+	 * Load the models referenced by the given columns with one {@code WHERE Id IN (...)}
+	 * query per referenced table and window of result rows, instead of one query per
+	 * row when each model is marshalled.
+	 *
+	 * @param columns names of columns holding a {@link Model}
+	 */
+	public From include(String... columns) {
+		for (String column : columns) {
+			boolean found = false;
+			for (ColumnInfo columnInfo : Cache.getTableInfo(mType).getColumnInfos()) {
+				if (columnInfo.getType() == ColumnInfo.Type.MODEL && columnInfo.getName().equalsIgnoreCase(column)) {
+					addInclude(columnInfo);
+					found = true;
+				}
+			}
+
+			if (!found) {
+				throw new IllegalArgumentException("No model column named " + column + " in " + mType.getName());
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Like {@link #include(String...)} for every column referencing type.
+	 */
+	public From include(Class<? extends Model> type) {
+		boolean found = false;
+		for (ColumnInfo columnInfo : Cache.getTableInfo(mType).getColumnInfos()) {
+			if (columnInfo.getType() == ColumnInfo.Type.MODEL && type.isAssignableFrom(columnInfo.getStorageClass())) {
+				addInclude(columnInfo);
+				found = true;
+			}
+		}
+
+		if (!found) {
+			throw new IllegalArgumentException("No column of " + mType.getName() + " references " + type.getName());
+		}
+
+		return this;
+	}
+
+	/**
+	 * Like {@link #include(Class)} for each of types. Prefer chaining include(Class)
+	 * calls, passing several generic classes makes the caller's compiler warn.
+	 */
+	@SuppressWarnings("unchecked")
+	public From include(Class<? extends Model>... types) {
+		for (Class<? extends Model> type : types) {
+			include(type);
+		}
+
+		return this;
+	}
+
+	/**
+	 * Select the rows following the row with the given column value and Id, ordered
+	 * by column and Id. Unlike an offset, SQLite seeks straight to the first row
+	 * through an index on (column, Id) instead of reading and discarding the rows
+	 * before it. The column must be NOT NULL. Combine with {@link #limit(int)}, or
+	 * use {@link #page} to walk through the results.
+	 */
+	public From after(String column, Object value, long id) {
+		return seek(column, false, value, id);
+	}
+
+	/**
+	 * Like {@link #after}, for the rows preceding the given one in descending order.
+	 */
+	public From before(String column, Object value, long id) {
+		return seek(column, true, value, id);
+	}
+
+	/**
+	 * @param pageSize rows per page, positive
+	 * @return the first pageSize rows ordered by column and Id, see {@link Page}.
+	 *         The query belongs to the returned pages from then on.
+	 */
+	public <T extends Model> Page<T> page(String column, int pageSize) {
+		return page(column, false, pageSize);
+	}
+
+	public <T extends Model> Page<T> page(String column, boolean descending, int pageSize) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("pageSize must be positive, was " + pageSize);
+		}
+
+		seek(column, descending, null, null);
+		return new Page<T>(this, column, descending, pageSize);
+	}
+
+	/**
+	 * Hydrate the models of every joined table from the same result rows as the
+	 * selected models, and add them to the entity cache. Model columns referencing a
+	 * joined row resolve to the joined model without another query.
+	 * <p>
+	 * The projection is generated: all columns of this table, plus the columns of
+	 * each joined table under a generated alias. Use {@code new Select()} without
+	 * columns, and give the table an alias if it's selected from a subquery.
+	 */
+	public From eager() {
+		mEager = true;
+		return this;
+	}
+
 	void addArguments(Object[] args) {
 		mArguments.addAll(Arrays.asList(args));
 	}
 
 	@Override
 	public String toSql() {
+		return toSql(null);
+	}
+
+	/**
+	 * @param columns the projection to select instead of the Select's, may be null
+	 */
+	private String toSql(String[] columns) {
 		StringBuilder sql = new StringBuilder();
-		sql.append(mQueryBase.toSql());
-		sql.append("FROM ");
-		sql.append(mFrom).append(" ");
+		appendSelectFrom(sql, columns);
 
-		if (mAlias != null) {
-			sql.append("AS ");
-			sql.append(mAlias);
+		final String keyset = getKeysetCondition();
+		if (mWhere != null && keyset != null) {
+			sql.append("WHERE (");
+			sql.append(mWhere);
+			sql.append(") AND ");
+			sql.append(keyset);
 			sql.append(" ");
 		}
-
-		for (Join join : mJoins) {
-			sql.append(join.toSql());
-		}
-
-		if (mWhere != null) {
+		else if (mWhere != null || keyset != null) {
 			sql.append("WHERE ");
-			sql.append(mWhere);
+			sql.append(mWhere != null ? mWhere : keyset);
 			sql.append(" ");
 		}
 
@@ -247,7 +388,18 @@ public final class From implements Sqlable {
 			sql.append(" ");
 		}
 
-		if (mOrderBy != null) {
+		if (mKeysetColumn != null) {
+			if (mOrderBy != null) {
+				throw new IllegalStateException("Keyset pagination orders by its column and Id, remove order by");
+			}
+
+			final String direction = mKeysetDescending ? " DESC" : " ASC";
+			sql.append("ORDER BY ");
+			sql.append(mKeysetColumn).append(direction).append(", ");
+			sql.append(getIdColumn()).append(direction);
+			sql.append(" ");
+		}
+		else if (mOrderBy != null) {
 			sql.append("ORDER BY ");
 			sql.append(mOrderBy);
 			sql.append(" ");
@@ -279,12 +431,179 @@ public final class From implements Sqlable {
 		return sql.toString().trim();
 	}
 
+	/**
+	 * Iterate over the selected models in Id order, one page of
+	 * {@value #DEFAULT_PAGE_SIZE} rows at a time, see {@link ModelIterator}.
+	 */
+	public <T extends Model> ModelIterator<T> iterate() {
+		return iterate(DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * Like {@link #iterate()}. The query can't have its own order, grouping, limit or
+	 * offset, since the pages are ordered and limited by Id.
+	 *
+	 * @param pageSize rows per page, positive
+	 */
+	public <T extends Model> ModelIterator<T> iterate(int pageSize) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("pageSize must be positive, was " + pageSize);
+		}
+		if (!(mQueryBase instanceof Select) || ActiveAndroid.inContentProvider()) {
+			throw new IllegalStateException("iterate() needs a select query outside the ContentProvider");
+		}
+		if (mGroupBy != null || mHaving != null || mOrderBy != null || mLimit != null || mOffset != null
+				|| mMatch != null || mKeysetColumn != null) {
+			throw new IllegalStateException("iterate() orders and pages by Id, remove group by, order by, limit and offset");
+		}
+
+		final String idColumn = getIdColumn();
+		final StringBuilder sql = new StringBuilder();
+		appendSelectFrom(sql, null);
+		sql.append("WHERE ");
+		if (mWhere != null) {
+			sql.append("(").append(mWhere).append(") AND ");
+		}
+		sql.append(idColumn).append(" > ? ORDER BY ").append(idColumn).append(" LIMIT ").append(pageSize);
+
+		return new ModelIterator<T>(mType, sql.toString(), getBindArguments(), pageSize, createPrefetcher());
+	}
+
+	/**
+	 * Pass every selected model to callback, see {@link #iterate()}.
+	 */
+	public <T extends Model> void forEach(ModelCallback<T> callback) {
+		forEach(this.<T>iterate(), callback);
+	}
+
+	/**
+	 * Like {@link #forEach(ModelCallback)}, refilling model for every row instead of
+	 * creating a model per row, see {@link ModelIterator#recycle(Model)}.
+	 */
+	public <T extends Model> void forEach(T model, ModelCallback<T> callback) {
+		forEach(this.<T>iterate().recycle(model), callback);
+	}
+
+	private static <T extends Model> void forEach(ModelIterator<T> iterator, ModelCallback<T> callback) {
+		try {
+			while (iterator.hasNext()) {
+				if (!callback.onModel(iterator.next())) {
+					break;
+				}
+			}
+		}
+		finally {
+			iterator.close();
+		}
+	}
+
+	// Terminals reading numbers and strings instead of models
+
+	/**
+	 * @return the number of rows the query selects, limit, offset and grouping
+	 *         included
+	 */
+	public long count() {
+		checkSelectQuery();
+		return SQLiteUtils.simpleQueryForLong("SELECT COUNT(*) FROM (" + toSql() + ")", getBindArguments());
+	}
+
+	/**
+	 * @return true if the query selects at least one row. SQLite stops at the first.
+	 */
+	public boolean exists() {
+		checkSelectQuery();
+		return SQLiteUtils.simpleQueryForLong("SELECT EXISTS (" + toSql() + ")", getBindArguments()) != 0;
+	}
+
+	/**
+	 * The aggregates below are selected in place of the query's columns, so order by,
+	 * limit and offset apply to the single result row, not to the aggregated rows.
+	 *
+	 * @return the sum of column, 0 if no row is selected
+	 */
+	public double sum(String column) {
+		return aggregate("SUM", column, 0);
+	}
+
+	/**
+	 * @return the average of column, NaN if no row is selected
+	 */
+	public double avg(String column) {
+		return aggregate("AVG", column, Double.NaN);
+	}
+
+	/**
+	 * @return the smallest value of column, NaN if no row is selected
+	 */
+	public double min(String column) {
+		return aggregate("MIN", column, Double.NaN);
+	}
+
+	/**
+	 * @return the largest value of column, NaN if no row is selected
+	 */
+	public double max(String column) {
+		return aggregate("MAX", column, Double.NaN);
+	}
+
+	/**
+	 * @return column of every selected row, in order, NULL read as 0
+	 */
+	public long[] pluckLongs(String column) {
+		checkSelectQuery();
+		return SQLiteUtils.queryForLongs(toSql(new String[] { column }), getBindArguments());
+	}
+
+	/**
+	 * @return column of every selected row, in order
+	 */
+	public String[] pluckStrings(String column) {
+		checkSelectQuery();
+		return SQLiteUtils.queryForStrings(toSql(new String[] { column }), getBindArguments());
+	}
+
+	/**
+	 * Map the selected rows to instances of type instead of models, see
+	 * {@link ClassRowMapper}. Select only the columns needed.
+	 */
+	public <R> List<R> executeAs(Class<R> type) {
+		return executeAs(new ClassRowMapper<R>(type));
+	}
+
+	/**
+	 * @return what mapper returned for each selected row, in order
+	 */
+	public <R> List<R> executeAs(RowMapper<R> mapper) {
+		checkSelectQuery();
+
+		final List<R> rows = new ArrayList<R>();
+		final Yield yield = new Yield().beginRead();
+		try {
+			final Cursor cursor = SQLiteUtils.rawQuery(toSql(), getBindArguments());
+			try {
+				while (cursor.moveToNext()) {
+					rows.add(mapper.map(cursor));
+				}
+			}
+			finally {
+				cursor.close();
+			}
+			yield.success();
+		}
+		finally {
+			yield.end();
+		}
+
+		return rows;
+	}
+
 	public <T extends Model> CursorList<T> execute() {
 		if (mQueryBase instanceof Select) {
 			if (!ActiveAndroid.inContentProvider()) {
-				return SQLiteUtils.rawQuery(mType, toSql(), getArguments());
+				return SQLiteUtils.rawQuery(mType, toSql(), getBindArguments(), createPrefetcher());
 			} else {
-				if (mGroupBy != null || mHaving != null || mLimit != null)
+				if (mGroupBy != null || mHaving != null || mLimit != null || mKeysetColumn != null)
 					throw new IllegalArgumentException(String.format("Query not support by ContentProvider"));
 
 				String[] projection = {};
@@ -298,15 +617,14 @@ public final class From implements Sqlable {
 			}
 		} else if (mQueryBase instanceof Delete) {
 			if (!ActiveAndroid.inContentProvider()) {
-				SQLiteUtils.execSql(toSql(), getArguments());
-				Cache.getContext().getContentResolver().notifyChange(
-						ContentProvider.createUri(mType, null), null);
+				SQLiteUtils.execSql(toSql(), getBindArguments());
+				Cache.notifyChange(mType, null);
 			} else {
 				Cache.getContext().getContentResolver().delete(ContentProvider.createUri(mType, null), mWhere, getArguments());
 			}
 			return null;
 		} else {
-			if (!ActiveAndroid.inContentProvider()) SQLiteUtils.execSql(toSql(), getArguments());
+			if (!ActiveAndroid.inContentProvider()) SQLiteUtils.execSql(toSql(), getBindArguments());
 			else Cache.getContext().getContentResolver().delete(ContentProvider.createUri(mType, null), mWhere, getArguments());
 			return null;
 		}
@@ -326,23 +644,214 @@ public final class From implements Sqlable {
 		}
 		if (mQueryBase instanceof Select) {
 			limit(1);
-			return (T) SQLiteUtils.rawQuerySingle(mType, toSql(), getArguments());
+			return (T) SQLiteUtils.rawQuerySingle(mType, toSql(), getBindArguments(), createPrefetcher());
 		} else if (mQueryBase instanceof Delete) {
 			limit(1);
-			SQLiteUtils.rawQuerySingle(mType, toSql(), getArguments()).delete();
+			SQLiteUtils.rawQuerySingle(mType, toSql(), getBindArguments(), null).delete();
 			return null;
 		} else {
-			SQLiteUtils.execSql(toSql(), getArguments());
+			SQLiteUtils.execSql(toSql(), getBindArguments());
+			return null;
+		}
+	}
+
+	/**
+	 * Queue a delete or update query on the {@link WriteQueue}. Don't modify the
+	 * query until the returned future completes.
+	 */
+	public Future<Void> executeAsync() {
+		return executeAsync(null);
+	}
+
+	/**
+	 * @param callback called on the main thread once the query is committed, may be
+	 *        null
+	 */
+	public Future<Void> executeAsync(WriteQueue.Callback<Void> callback) {
+		if (mQueryBase instanceof Select) {
+			throw new IllegalStateException("Only delete and update queries can be queued, execute select queries");
+		}
+
+		return WriteQueue.submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				execute();
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Build the SQL once, for executing the query many times with new arguments. Only
+	 * select and delete queries can be prepared, and not inside the ContentProvider.
+	 */
+	public <T extends Model> PreparedQuery<T> prepare() {
+		if (ActiveAndroid.inContentProvider()) {
+			throw new IllegalStateException("Prepared queries not supported by ContentProvider");
+		}
+
+		final boolean select = mQueryBase instanceof Select;
+		if (!select && !(mQueryBase instanceof Delete)) {
+			throw new IllegalStateException("Only select and delete queries can be prepared");
+		}
+
+		return new PreparedQuery<T>(mType, toSql(), select, getBindArguments(), select ? createPrefetcher() : null);
+	}
+
+	private void checkSelectQuery() {
+		if (!(mQueryBase instanceof Select) || ActiveAndroid.inContentProvider()) {
+			throw new IllegalStateException("Only select queries outside the ContentProvider can be read without models");
+		}
+	}
+
+	private double aggregate(String function, String column, double defaultValue) {
+		checkSelectQuery();
+		return SQLiteUtils.simpleQueryForDouble(toSql(new String[] { function + "(" + column + ")" }), getBindArguments(),
+				defaultValue);
+	}
+
+	private From seek(String column, boolean descending, Object value, Long id) {
+		if (mOffset != null) {
+			throw new IllegalStateException("after(), before() and page() skip rows by seeking, remove the offset");
+		}
+
+		mKeysetColumn = column;
+		mKeysetDescending = descending;
+		mKeysetValue = value;
+		mKeysetId = id;
+
+		return this;
+	}
+
+	// col >= ? AND (col > ? OR Id > ?) rather than (col, Id) > (?, ?): row values
+	// need SQLite 3.15, and the leading range keeps the index on col usable
+	private String getKeysetCondition() {
+		if (mKeysetColumn == null || mKeysetId == null) {
 			return null;
 		}
+
+		final String op = mKeysetDescending ? "<" : ">";
+		return "(" + mKeysetColumn + " " + op + "= ? AND (" + mKeysetColumn + " " + op + " ? OR "
+				+ getIdColumn() + " " + op + " ?))";
+	}
+
+	private List<Object> getAllArguments() {
+		if (mKeysetColumn == null || mKeysetId == null) {
+			return mArguments;
+		}
+
+		final List<Object> arguments = new ArrayList<Object>(mArguments);
+		arguments.add(mKeysetValue);
+		arguments.add(mKeysetValue);
+		arguments.add(mKeysetId);
+		return arguments;
+	}
+
+	private String getIdColumn() {
+		return (mAlias != null ? mAlias : mFrom) + ".Id";
+	}
+
+	private void appendSelectFrom(StringBuilder sql, String[] columns) {
+		if (columns != null) {
+			sql.append(((Select) mQueryBase).toSql(columns));
+		}
+		else if (mEager && mQueryBase instanceof Select) {
+			sql.append(((Select) mQueryBase).toSql(createEagerColumns()));
+		}
+		else {
+			sql.append(mQueryBase.toSql());
+		}
+		sql.append("FROM ");
+		sql.append(mFrom).append(" ");
+
+		if (mAlias != null) {
+			sql.append("AS ");
+			sql.append(mAlias);
+			sql.append(" ");
+		}
+
+		for (Join join : mJoins) {
+			sql.append(join.toSql());
+		}
+	}
+
+	private void addInclude(ColumnInfo columnInfo) {
+		if (mIncludes == null) {
+			mIncludes = new ArrayList<ColumnInfo>();
+		}
+
+		if (!mIncludes.contains(columnInfo)) {
+			mIncludes.add(columnInfo);
+		}
+	}
+
+	private ForeignKeyPrefetcher createPrefetcher() {
+		if (mIncludes == null && !mEager) {
+			return null;
+		}
+
+		final ColumnInfo[] includes = mIncludes != null
+				? mIncludes.toArray(new ColumnInfo[mIncludes.size()]) : new ColumnInfo[0];
+		final List<Class<? extends Model>> joinedTypes = new ArrayList<Class<? extends Model>>();
+		final List<String> joinedPrefixes = new ArrayList<String>();
+
+		if (mEager) {
+			for (int i = 0; i < mJoins.size(); i++) {
+				joinedTypes.add(mJoins.get(i).getType());
+				joinedPrefixes.add(getEagerPrefix(i));
+			}
+		}
+
+		return new ForeignKeyPrefetcher(includes, joinedTypes, joinedPrefixes);
+	}
+
+	private String[] createEagerColumns() {
+		if (((Select) mQueryBase).hasColumns()) {
+			throw new IllegalStateException("eager() generates its own projection, use new Select() without columns");
+		}
+
+		final List<String> columns = new ArrayList<String>();
+		columns.add((mAlias != null ? mAlias : mFrom) + ".*");
+
+		for (int i = 0; i < mJoins.size(); i++) {
+			final Join join = mJoins.get(i);
+			final String prefix = getEagerPrefix(i);
+
+			for (ColumnInfo columnInfo : Cache.getTableInfo(join.getType()).getColumnInfos()) {
+				columns.add(join.getQualifier() + "." + columnInfo.getName() + " AS " + prefix + columnInfo.getName());
+			}
+		}
+
+		return columns.toArray(new String[columns.size()]);
+	}
+
+	// No periods: Cursor.getColumnIndex() drops everything up to the last one
+	private static String getEagerPrefix(int join) {
+		return "_" + (join + 1) + "_";
+	}
+
+	/**
+	 * @return the arguments as bound by {@link #execute}, see {@link SQLiteUtils#toBindArgument}
+	 */
+	public Object[] getBindArguments() {
+		final List<Object> arguments = getAllArguments();
+		final int size = arguments.size();
+		final Object[] args = new Object[size];
+
+		for (int i = 0; i < size; i++) {
+			args[i] = SQLiteUtils.toBindArgument(arguments.get(i));
+		}
+
+		return args;
 	}
 
 	public String[] getArguments() {
-		final int size = mArguments.size();
+		final List<Object> arguments = getAllArguments();
+		final int size = arguments.size();
 		final String[] args = new String[size];
 
 		for (int i = 0; i < size; i++) {
-			args[i] = mArguments.get(i).toString();
+			args[i] = arguments.get(i).toString();
 		}
 
 		return args;
@@ -64,6 +64,17 @@ public final class Join implements Sqlable {
 		return mFrom;
 	}
 
+	Class<? extends Model> getType() {
+		return mType;
+	}
+
+	/**
+	 * @return the name the joined table's columns are qualified with
+	 */
+	String getQualifier() {
+		return mAlias != null ? mAlias : Cache.getTableName(mType);
+	}
+
 	@Override
 	public String toSql() {
 		StringBuilder sql = new StringBuilder();
@@ -0,0 +1,146 @@
+package com.activeandroid.query;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import android.database.Cursor;
+
+import com.activeandroid.Model;
+import com.activeandroid.util.ForeignKeyPrefetcher;
+import com.activeandroid.util.ModelCursorMarshaller;
+import com.activeandroid.util.SQLiteUtils;
+import com.activeandroid.util.SQLiteUtils.Yield;
+
+/**
+ * Forward-only iteration over the results of {@link From#iterate}. Rows are read in
+ * pages of {@code WHERE Id > last ORDER BY Id LIMIT n}, so only one page is held
+ * in a cursor at a time and no model is kept after it's returned, however large
+ * the table. Close the iterator if it isn't read to the end.
+ */
+public final class ModelIterator<T extends Model> implements Iterator<T>, Closeable {
+	private final String mSql;
+	private final Object[] mArguments;
+	private final int mPageSize;
+	private final ModelCursorMarshaller<T> mMarshaller;
+
+	private Cursor mCursor;
+	private int mIdIndex;
+	private long mLastId = Long.MIN_VALUE;
+	private boolean mDone;
+
+	/**
+	 * @param sql the page query, with its last argument the Id to continue after
+	 * @param arguments the arguments of sql except the last
+	 */
+	ModelIterator(Class<? extends Model> type, String sql, Object[] arguments, int pageSize,
+			ForeignKeyPrefetcher prefetcher) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("pageSize must be positive, was " + pageSize);
+		}
+
+		mSql = sql;
+		mArguments = new Object[arguments.length + 1];
+		System.arraycopy(arguments, 0, mArguments, 0, arguments.length);
+		mPageSize = pageSize;
+		mMarshaller = new ModelCursorMarshaller<T>(type, prefetcher);
+	}
+
+	/**
+	 * Return one instance, refilled for every row, instead of a model per row. The
+	 * entity cache is bypassed. See {@link ModelCursorMarshaller#recycle}.
+	 */
+	public ModelIterator<T> recycle() {
+		return recycle(null);
+	}
+
+	/**
+	 * Like {@link #recycle()}, refilling model.
+	 */
+	public ModelIterator<T> recycle(T model) {
+		mMarshaller.recycle(model);
+		return this;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!mDone) {
+			if (mCursor == null) {
+				mCursor = queryPage();
+				mIdIndex = mCursor.getColumnIndex("Id");
+				if (mIdIndex < 0) {
+					close();
+					throw new IllegalStateException("iterate() needs the Id column in the selected columns");
+				}
+			}
+
+			if (mCursor.getPosition() < mCursor.getCount() - 1) {
+				return true;
+			}
+
+			// A short page is the last one
+			final boolean full = mCursor.getCount() == mPageSize;
+			mCursor.close();
+			mCursor = null;
+			mDone = !full;
+		}
+
+		return false;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		mCursor.moveToNext();
+		mLastId = mCursor.getLong(mIdIndex);
+		return mMarshaller.marshall(mCursor);
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		if (mCursor != null) {
+			mCursor.close();
+			mCursor = null;
+		}
+		mDone = true;
+	}
+
+	private Cursor queryPage() {
+		mArguments[mArguments.length - 1] = mLastId;
+
+		Cursor cursor;
+		Yield yield = new Yield().beginRead();
+		try {
+			cursor = SQLiteUtils.rawQuery(mSql, mArguments);
+			yield.success();
+		} finally {
+			yield.end();
+		}
+
+		return cursor;
+	}
+}
@@ -0,0 +1,105 @@
+package com.activeandroid.query;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.activeandroid.Cache;
+import com.activeandroid.ColumnInfo;
+import com.activeandroid.Model;
+import com.activeandroid.util.Log;
+import com.novoda.notils.cursor.CursorList;
+
+/**
+ * One page of a query paginated with {@link From#page}. Every following page is
+ * selected with {@link From#after} (or {@link From#before}) the last row of this
+ * one, so fetching page 400 costs the same as fetching page 2.
+ *
+ * <pre>
+ * Page&lt;Message&gt; page = new Select().from(Message.class).page("Date", true, 50);
+ * ...
+ * page = page.next();
+ * </pre>
+ */
+public final class Page<T extends Model> {
+	private final From mFrom;
+	private final String mColumn;
+	private final boolean mDescending;
+	private final int mSize;
+	private final CursorList<T> mModels;
+
+	Page(From from, String column, boolean descending, int size) {
+		mFrom = from;
+		mColumn = column;
+		mDescending = descending;
+		mSize = size;
+		mModels = from.limit(size).execute();
+	}
+
+	public CursorList<T> getModels() {
+		return mModels;
+	}
+
+	/**
+	 * @return false if this page is the last one. A full last page is followed by an
+	 *         empty one.
+	 */
+	public boolean hasNext() {
+		return mModels.size() == mSize;
+	}
+
+	/**
+	 * @return the page after this one. This page's models stay usable until it's
+	 *         closed.
+	 */
+	public Page<T> next() {
+		if (!hasNext()) {
+			throw new IllegalStateException("No page after the last one");
+		}
+
+		final T last = mModels.get(mSize - 1);
+		final Object value = getColumnValue(last);
+		if (mDescending) {
+			mFrom.before(mColumn, value, last.getId());
+		}
+		else {
+			mFrom.after(mColumn, value, last.getId());
+		}
+
+		return new Page<T>(mFrom, mColumn, mDescending, mSize);
+	}
+
+	public void close() {
+		mModels.close();
+	}
+
+	private Object getColumnValue(T model) {
+		// The column may be qualified with the table or its alias
+		final String name = mColumn.substring(mColumn.lastIndexOf('.') + 1);
+
+		for (ColumnInfo columnInfo : Cache.getTableInfo(model.getClass()).getColumnInfos()) {
+			if (columnInfo.getName().equalsIgnoreCase(name)) {
+				try {
+					return columnInfo.getField().get(model);
+				}
+				catch (IllegalAccessException e) {
+					Log.e(e.getClass().getName(), e);
+				}
+			}
+		}
+
+		throw new IllegalArgumentException("No column named " + name + " in " + model.getClass().getName());
+	}
+}
@@ -0,0 +1,105 @@
+package com.activeandroid.query;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.database.sqlite.SQLiteStatement;
+
+import com.activeandroid.Cache;
+import com.activeandroid.Model;
+import com.activeandroid.util.ForeignKeyPrefetcher;
+import com.activeandroid.util.SQLiteUtils;
+import com.novoda.notils.cursor.CursorList;
+
+/**
+ * A query built once by {@link From#prepare()} and executed many times with new
+ * arguments. The SQL isn't rebuilt, so SQLite finds it in its statement cache;
+ * deletes keep their compiled statement.
+ *
+ * <pre>
+ * PreparedQuery&lt;Item&gt; byName = new Select().from(Item.class).where("Name = ?").prepare();
+ * Item item = byName.executeSingle("foo");
+ * </pre>
+ *
+ * Instances are immutable and may be shared between threads.
+ */
+public final class PreparedQuery<T extends Model> {
+	private final Class<? extends Model> mType;
+	private final String mSql;
+	private final boolean mSelect;
+	private final Object[] mArguments;
+
+	// Copied for every execution, null if nothing is prefetched
+	private final ForeignKeyPrefetcher mPrefetcher;
+
+	PreparedQuery(Class<? extends Model> type, String sql, boolean select, Object[] arguments,
+			ForeignKeyPrefetcher prefetcher) {
+		mType = type;
+		mSql = sql;
+		mSelect = select;
+		mArguments = arguments;
+		mPrefetcher = prefetcher;
+	}
+
+	public String getSql() {
+		return mSql;
+	}
+
+	/**
+	 * @param args the values of every ? in the query, join arguments included. Without
+	 *        any, the arguments given to the builder are used.
+	 * @return the selected models, null for a delete
+	 */
+	public CursorList<T> execute(Object... args) {
+		final Object[] bindArgs = args.length > 0 ? args : mArguments;
+
+		if (mSelect) {
+			return SQLiteUtils.rawQuery(mType, mSql, bindArgs, mPrefetcher != null ? mPrefetcher.copy() : null);
+		}
+
+		final SQLiteStatement statement = Cache.acquireStatement(mSql);
+		try {
+			SQLiteUtils.bindArguments(statement, bindArgs);
+			SQLiteUtils.executeUpdate(statement);
+		}
+		finally {
+			Cache.releaseStatement(mSql, statement);
+		}
+
+		Cache.notifyChange(mType, null);
+		return null;
+	}
+
+	/**
+	 * Like {@link #execute}, for the first selected model. Prepare the query with a
+	 * limit of 1 to select only that.
+	 */
+	public T executeSingle(Object... args) {
+		if (!mSelect) {
+			throw new IllegalStateException("executeSingle() needs a select query");
+		}
+
+		T item = null;
+
+		final CursorList<T> entities = execute(args);
+		if (entities.size() > 0) {
+			item = entities.get(0);
+		}
+		entities.close();
+
+		return item;
+	}
+}
@@ -0,0 +1,31 @@
+package com.activeandroid.query;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.database.Cursor;
+
+/**
+ * Maps the rows of a projection query to plain objects, see
+ * {@link From#executeAs(RowMapper)}. A mapper may also return null and collect the
+ * columns into arrays of its own.
+ */
+public interface RowMapper<R> {
+	/**
+	 * @param cursor positioned on the row to map. Don't move or close it.
+	 */
+	R map(Cursor cursor);
+}
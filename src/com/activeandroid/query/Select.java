@@ -90,6 +90,14 @@ public final class Select implements Sqlable {
 
 	@Override
 	public String toSql() {
+		return toSql(mColumns);
+	}
+
+	boolean hasColumns() {
+		return mColumns != null && mColumns.length > 0;
+	}
+
+	String toSql(String[] columns) {
 		StringBuilder sql = new StringBuilder();
 
 		sql.append("SELECT ");
@@ -101,8 +109,8 @@ public final class Select implements Sqlable {
 			sql.append("ALL ");
 		}
 
-		if (mColumns != null && mColumns.length > 0) {
-			sql.append(TextUtils.join(", ", mColumns) + " ");
+		if (columns != null && columns.length > 0) {
+			sql.append(TextUtils.join(", ", columns) + " ");
 		}
 		else {
 			sql.append("* ");
@@ -16,11 +16,14 @@ package com.activeandroid.query;
  * limitations under the License.
  */
 
+import com.activeandroid.WriteQueue;
 import com.activeandroid.util.SQLiteUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 public final class Set implements Sqlable {
 	private Update mUpdate;
@@ -82,7 +85,44 @@ public final class Set implements Sqlable {
 	}
 
 	public void execute() {
-		SQLiteUtils.execSql(toSql(), getArguments());
+		SQLiteUtils.execSql(toSql(), getBindArguments());
+	}
+
+	/**
+	 * Queue the update on the {@link WriteQueue}, see {@link From#executeAsync()}.
+	 */
+	public Future<Void> executeAsync() {
+		return executeAsync(null);
+	}
+
+	public Future<Void> executeAsync(WriteQueue.Callback<Void> callback) {
+		return WriteQueue.submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				execute();
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * @return the set arguments followed by the where arguments, as bound by
+	 *         {@link #execute}, see {@link SQLiteUtils#toBindArgument}
+	 */
+	public Object[] getBindArguments() {
+		final int setSize = mSetArguments.size();
+		final int whereSize = mWhereArguments.size();
+		final Object[] args = new Object[setSize + whereSize];
+
+		for (int i = 0; i < setSize; i++) {
+			args[i] = SQLiteUtils.toBindArgument(mSetArguments.get(i));
+		}
+
+		for (int i = 0; i < whereSize; i++) {
+			args[i + setSize] = SQLiteUtils.toBindArgument(mWhereArguments.get(i));
+		}
+
+		return args;
 	}
 
 	public String[] getArguments() {
@@ -0,0 +1,359 @@
+package com.activeandroid.util;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.database.Cursor;
+
+import com.activeandroid.Cache;
+import com.activeandroid.ColumnInfo;
+import com.activeandroid.Model;
+import com.novoda.notils.cursor.CursorList;
+
+/**
+ * Loads the models referenced by a window of result rows with one
+ * {@code WHERE Id IN (...)} query per referenced table, instead of one query per
+ * row and column. See {@link com.activeandroid.query.From#include}.
+ * <p>
+ * For {@link com.activeandroid.query.From#eager} queries it also hydrates the models
+ * of the joined tables from the columns selected for them in the same row.
+ * <p>
+ * While a row is marshalled the prefetcher is active on the thread and
+ * {@link Model#load} finds the referenced models through {@link #lookup}.
+ */
+public final class ForeignKeyPrefetcher {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final int WINDOW_SIZE = 256;
+
+	// SQLITE_MAX_VARIABLE_NUMBER
+	private static final int MAX_BIND_ARGUMENTS = 999;
+
+	private static final ThreadLocal<ForeignKeyPrefetcher> sActive = new ThreadLocal<ForeignKeyPrefetcher>();
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final ColumnInfo[] mColumns;
+	private final List<Class<? extends Model>> mJoinedTypes;
+	private final List<String> mJoinedPrefixes;
+
+	private Cursor mIndexedCursor;
+	private int[] mColumnIndices;
+	private int mWindowStart = -1;
+	private int mWindowEnd = -1;
+
+	private final Map<Class<? extends Model>, Map<Long, Model>> mLoaded = new HashMap<Class<? extends Model>, Map<Long, Model>>();
+
+	// Joined column indices of the last cursor seen, in each table's column plan order
+	private Cursor mRowCursor;
+	private int[][] mJoinedIndices;
+
+	// Models hydrated from the current row
+	private final Map<Class<? extends Model>, Map<Long, Model>> mRowModels = new HashMap<Class<? extends Model>, Map<Long, Model>>();
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param columns columns of type {@link ColumnInfo.Type#MODEL}
+	 */
+	public ForeignKeyPrefetcher(ColumnInfo[] columns) {
+		this(columns, new ArrayList<Class<? extends Model>>(), new ArrayList<String>());
+	}
+
+	/**
+	 * @param joinedTypes models of the joined tables
+	 * @param joinedPrefixes per joined table, the prefix its columns are selected with
+	 */
+	public ForeignKeyPrefetcher(ColumnInfo[] columns, List<Class<? extends Model>> joinedTypes,
+			List<String> joinedPrefixes) {
+		mColumns = columns;
+		mJoinedTypes = joinedTypes;
+		mJoinedPrefixes = joinedPrefixes;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return a prefetcher for the same columns and joins, for another query
+	 */
+	public ForeignKeyPrefetcher copy() {
+		return new ForeignKeyPrefetcher(mColumns, mJoinedTypes, mJoinedPrefixes);
+	}
+
+	/**
+	 * Load what the current row and up to {@link #WINDOW_SIZE} rows after it refer
+	 * to, unless the current row lies in the window loaded last.
+	 */
+	public void prefetch(Cursor cursor) {
+		final int position = cursor.getPosition();
+		if (mColumns.length == 0) {
+			return;
+		}
+		if (cursor == mIndexedCursor && position >= mWindowStart && position < mWindowEnd) {
+			return;
+		}
+
+		if (cursor != mIndexedCursor) {
+			mColumnIndices = new int[mColumns.length];
+			for (int i = 0; i < mColumns.length; i++) {
+				mColumnIndices[i] = cursor.getColumnIndex(mColumns[i].getName());
+			}
+			mIndexedCursor = cursor;
+		}
+
+		final Map<Class<? extends Model>, Set<Long>> ids = new HashMap<Class<? extends Model>, Set<Long>>();
+		int rows = 0;
+
+		try {
+			do {
+				for (int i = 0; i < mColumns.length; i++) {
+					final int columnIndex = mColumnIndices[i];
+					if (columnIndex < 0 || cursor.isNull(columnIndex)) {
+						continue;
+					}
+
+					final Class<? extends Model> type = getReferencedType(mColumns[i]);
+					final long id = cursor.getLong(columnIndex);
+					if (Cache.getEntity(type, id) != null) {
+						continue;
+					}
+
+					Set<Long> typeIds = ids.get(type);
+					if (typeIds == null) {
+						typeIds = new LinkedHashSet<Long>();
+						ids.put(type, typeIds);
+					}
+					typeIds.add(id);
+				}
+				rows++;
+			} while (rows < WINDOW_SIZE && cursor.moveToNext());
+		}
+		finally {
+			cursor.moveToPosition(position);
+		}
+
+		mLoaded.clear();
+		for (Map.Entry<Class<? extends Model>, Set<Long>> entry : ids.entrySet()) {
+			mLoaded.put(entry.getKey(), load(entry.getKey(), new ArrayList<Long>(entry.getValue())));
+		}
+
+		mWindowStart = position;
+		mWindowEnd = position + rows;
+	}
+
+	/**
+	 * Start marshalling the current row of cursor. Forgets the models hydrated from
+	 * the previous row.
+	 */
+	public void beginRow(Cursor cursor) {
+		mRowModels.clear();
+		if (mJoinedTypes.isEmpty()) {
+			return;
+		}
+
+		if (cursor != mRowCursor) {
+			mJoinedIndices = new int[mJoinedTypes.size()][];
+			for (int i = 0; i < mJoinedIndices.length; i++) {
+				mJoinedIndices[i] = Cache.getTableInfo(mJoinedTypes.get(i)).getColumnIndices(cursor, mJoinedPrefixes.get(i));
+			}
+			mRowCursor = cursor;
+		}
+	}
+
+	/**
+	 * Register the model being marshalled from the current row, so joined rows
+	 * referring back to it get the same instance.
+	 */
+	public void addRowModel(Class<? extends Model> type, long id, Model model) {
+		Map<Long, Model> models = mRowModels.get(type);
+		if (models == null) {
+			models = new HashMap<Long, Model>();
+			mRowModels.put(type, models);
+		}
+		models.put(id, model);
+	}
+
+	/**
+	 * Hydrate the model of every joined table the current row has a match for, and
+	 * add it to the entity cache.
+	 */
+	public void hydrateJoins() {
+		for (int i = 0; i < mJoinedTypes.size(); i++) {
+			final Long id = getJoinedId(i);
+			if (id != null) {
+				hydrate(i, id);
+			}
+		}
+	}
+
+	/**
+	 * Make prefetcher the one {@link #lookup} consults on this thread.
+	 *
+	 * @return the previously active prefetcher, to be passed to {@link #exit}
+	 */
+	public static ForeignKeyPrefetcher enter(ForeignKeyPrefetcher prefetcher) {
+		final ForeignKeyPrefetcher previous = sActive.get();
+		sActive.set(prefetcher);
+		return previous;
+	}
+
+	public static void exit(ForeignKeyPrefetcher previous) {
+		if (previous != null) {
+			sActive.set(previous);
+		}
+		else {
+			sActive.remove();
+		}
+	}
+
+	/**
+	 * @return the model prefetched by the prefetcher active on this thread, or null
+	 */
+	public static Model lookup(Class<? extends Model> type, long id) {
+		final ForeignKeyPrefetcher prefetcher = sActive.get();
+		if (prefetcher == null) {
+			return null;
+		}
+
+		final Map<Long, Model> models = prefetcher.mLoaded.get(type);
+		final Model model = models != null ? models.get(id) : null;
+		if (model != null) {
+			return model;
+		}
+
+		return prefetcher.lookupJoined(type, id);
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@SuppressWarnings("unchecked")
+	private static Class<? extends Model> getReferencedType(ColumnInfo column) {
+		return (Class<? extends Model>) column.getStorageClass();
+	}
+
+	private Model lookupJoined(Class<? extends Model> type, long id) {
+		for (int i = 0; i < mJoinedTypes.size(); i++) {
+			if (mJoinedTypes.get(i).equals(type)) {
+				final Long joinedId = getJoinedId(i);
+				if (joinedId != null && joinedId == id) {
+					return hydrate(i, id);
+				}
+			}
+		}
+
+		final Map<Long, Model> models = mRowModels.get(type);
+		return models != null ? models.get(id) : null;
+	}
+
+	private Long getJoinedId(int join) {
+		if (mRowCursor == null) {
+			return null;
+		}
+
+		final int columnIndex = mJoinedIndices[join][0];
+		if (columnIndex < 0 || mRowCursor.isNull(columnIndex)) {
+			return null;
+		}
+
+		return mRowCursor.getLong(columnIndex);
+	}
+
+	private Model hydrate(int join, long id) {
+		final Class<? extends Model> type = mJoinedTypes.get(join);
+		final Map<Long, Model> models = mRowModels.get(type);
+		Model model = models != null ? models.get(id) : null;
+		if (model != null) {
+			return model;
+		}
+
+		model = Cache.getEntity(type, id);
+		if (model != null) {
+			addRowModel(type, id, model);
+			return model;
+		}
+
+		try {
+			model = type.newInstance();
+		}
+		catch (InstantiationException e) {
+			Log.e(e.getClass().getName(), e);
+			return null;
+		}
+		catch (IllegalAccessException e) {
+			Log.e(e.getClass().getName(), e);
+			return null;
+		}
+
+		// Registered first so references back to this row resolve to the same instance
+		addRowModel(type, id, model);
+		if (model.loadFromCursor(mRowCursor, mJoinedIndices[join]) == 0) {
+			Cache.addEntity(model);
+		}
+
+		return model;
+	}
+
+	private static Map<Long, Model> load(Class<? extends Model> type, List<Long> ids) {
+		final Map<Long, Model> models = new HashMap<Long, Model>();
+		final String tableName = Cache.getTableName(type);
+		final int size = ids.size();
+
+		for (int start = 0; start < size; start += MAX_BIND_ARGUMENTS) {
+			final int end = Math.min(start + MAX_BIND_ARGUMENTS, size);
+			final Object[] args = new Object[end - start];
+			final StringBuilder sql = new StringBuilder("SELECT * FROM ").append(tableName).append(" WHERE Id IN (");
+
+			for (int i = start; i < end; i++) {
+				args[i - start] = ids.get(i);
+				sql.append(i > start ? ",?" : "?");
+			}
+			sql.append(")");
+
+			final CursorList<Model> list = SQLiteUtils.rawQuery(type, sql.toString(), args, null);
+			try {
+				final int count = list.size();
+				for (int i = 0; i < count; i++) {
+					final Model model = list.get(i);
+					if (model != null) {
+						models.put(model.getId(), model);
+					}
+				}
+			}
+			finally {
+				list.close();
+			}
+		}
+
+		return models;
+	}
+}
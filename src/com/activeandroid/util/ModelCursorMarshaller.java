@@ -4,34 +4,84 @@ import android.database.Cursor;
 
 import com.activeandroid.Cache;
 import com.activeandroid.Model;
+import com.activeandroid.TableInfo;
 import com.novoda.notils.cursor.CursorMarshaller;
 
 public class ModelCursorMarshaller<T> implements CursorMarshaller<T> {
     private Class<? extends Model> type;
+    private TableInfo tableInfo;
+
+    // Column indices of the last cursor seen, in TableInfo column plan order (Id first)
+    private Cursor indexedCursor;
+    private int[] columnIndices;
+
+    // Loads referenced and joined models ahead of the rows that need them, may be null
+    private ForeignKeyPrefetcher prefetcher;
+
+    // Refill one instance for every row, see recycle()
+    private boolean recycle;
+    private Model recycled;
 
     public ModelCursorMarshaller(Class<? extends Model> type) {
+        this(type, null);
+    }
+
+    public ModelCursorMarshaller(Class<? extends Model> type, ForeignKeyPrefetcher prefetcher) {
         super();
         this.type = type;
+        this.tableInfo = Cache.getTableInfo(type);
+        this.prefetcher = prefetcher;
+    }
+
+    /**
+     * Refill model for every row instead of creating a model per row, for read-only
+     * scans. The entity cache is neither consulted nor filled, and every marshalled
+     * row is the same instance, valid until the next one is marshalled.
+     *
+     * @param model the instance to refill, or null to have one created
+     */
+    public void recycle(T model) {
+        this.recycle = true;
+        this.recycled = (Model) model;
+    }
+
+    private int[] getColumnIndices(Cursor cursor) {
+        if (cursor != indexedCursor) {
+            columnIndices = tableInfo.getColumnIndices(cursor);
+            indexedCursor = cursor;
+        }
+        return columnIndices;
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public T marshall(Cursor cursor) {
         Model entity = null;
+        final int[] columnIndices = getColumnIndices(cursor);
 
-        try {
-            entity = Cache.getEntity(type, cursor.getLong(cursor.getColumnIndex("Id")));
-        } catch (Exception e) {
-            //e.printStackTrace(); // Disable this if noise
+        if (!recycle) {
+            try {
+                entity = Cache.getEntity(type, cursor.getLong(columnIndices[0]));
+            } catch (Exception e) {
+                //e.printStackTrace(); // Disable this if noise
+            }
         }
         try {
-            if (entity == null) {
-                entity = type.newInstance();
-                //android.util.Log.d("ModelCursorMarshaller", "" + type);
-                int columnSize = entity.loadFromCursor(cursor);
-                //android.util.Log.d("ModelCursorMarshaller", "" + entity);
-                if (entity.getId() != null && columnSize == 0) {
-                    Cache.addEntity(entity);
+            if (prefetcher == null) {
+                if (entity == null) {
+                    entity = load(cursor, columnIndices);
+                }
+            } else {
+                final ForeignKeyPrefetcher previous = ForeignKeyPrefetcher.enter(prefetcher);
+                try {
+                    prefetcher.beginRow(cursor);
+                    if (entity == null) {
+                        prefetcher.prefetch(cursor);
+                        entity = load(cursor, columnIndices);
+                    }
+                    prefetcher.hydrateJoins();
+                } finally {
+                    ForeignKeyPrefetcher.exit(previous);
                 }
             }
         }
@@ -54,4 +104,30 @@ public class ModelCursorMarshaller<T> implements CursorMarshaller<T> {
 
         return (T) entity;
     }
+
+    private Model load(Cursor cursor, int[] columnIndices) throws InstantiationException, IllegalAccessException {
+        if (recycle) {
+            if (recycled == null) {
+                recycled = type.newInstance();
+            }
+            if (prefetcher != null && columnIndices[0] >= 0 && !cursor.isNull(columnIndices[0])) {
+                prefetcher.addRowModel(type, cursor.getLong(columnIndices[0]), recycled);
+            }
+            recycled.refillFromCursor(cursor, columnIndices);
+            return recycled;
+        }
+
+        final Model entity = type.newInstance();
+        //android.util.Log.d("ModelCursorMarshaller", "" + type);
+        if (prefetcher != null && columnIndices[0] >= 0 && !cursor.isNull(columnIndices[0])) {
+            // Joined rows referring back to this one get the same instance
+            prefetcher.addRowModel(type, cursor.getLong(columnIndices[0]), entity);
+        }
+        final int columnSize = entity.loadFromCursor(cursor, columnIndices);
+        //android.util.Log.d("ModelCursorMarshaller", "" + entity);
+        if (entity.getId() != null && columnSize == 0) {
+            Cache.addEntity(entity);
+        }
+        return entity;
+    }
 }
@@ -19,15 +19,26 @@ package com.activeandroid.util;
 import android.annotation.SuppressLint;
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDatabaseLockedException;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import android.os.Looper;
 import android.text.TextUtils;
 
 import com.activeandroid.ActiveAndroid;
 import com.activeandroid.Cache;
+import com.activeandroid.ColumnInfo;
 import com.activeandroid.Model;
+import com.activeandroid.Ref;
 import com.activeandroid.TableInfo;
+import com.activeandroid.WriteQueue;
 import com.activeandroid.annotation.Column;
 import com.activeandroid.annotation.Column.ConflictAction;
 import com.activeandroid.serializer.TypeSerializer;
@@ -44,6 +55,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 public final class SQLiteUtils {
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -98,7 +110,8 @@ public final class SQLiteUtils {
 	private static HashMap<String, List<String>> sUniqueGroupMap;
 	private static HashMap<String, ConflictAction> sOnUniqueConflictsMap;
 
-	private static List<Integer> sNoException = new ArrayList<Integer>();
+	// Set on threads that called showException(false)
+	private static final ThreadLocal<Boolean> sNoException = new ThreadLocal<Boolean>();
 
 	//////////////////////////////////////////////////////////////////////////////////////
 	// PUBLIC METHODS
@@ -120,6 +133,18 @@ public final class SQLiteUtils {
 			return this;
 		}
 
+		/**
+		 * Like {@link #begin()}, for a query. In write-ahead logging mode queries
+		 * read from their own connection, so nothing needs to yield.
+		 */
+		public Yield beginRead() {
+			if (Cache.isWriteAheadLogging()) {
+				return this;
+			}
+
+			return begin();
+		}
+
 		public Yield success() {
 			//if (yielded)
 			// TODO
@@ -135,12 +160,41 @@ public final class SQLiteUtils {
 		}
 	}
 
+	/**
+	 * @return true if e was thrown because another connection holds the database
+	 *         lock, so the transaction may succeed if retried
+	 */
+	@SuppressLint("NewApi")
+	public static boolean isDatabaseLocked(SQLiteException e) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			return e instanceof SQLiteDatabaseLockedException;
+		}
+
+		return e.getMessage() != null && e.getMessage().contains("database is locked");
+	}
+
 	public static void execSql(String sql) {
 		Cache.openDatabase().execSQL(sql);
 	}
 
+	/**
+	 * @param bindArgs converted by {@link #toBindArgument} unless they already are
+	 */
 	public static void execSql(String sql, Object[] bindArgs) {
-		Cache.openDatabase().execSQL(sql, bindArgs);
+		Object[] args = bindArgs;
+		for (int i = 0; i < bindArgs.length; i++) {
+			if (isBindArgument(bindArgs[i])) {
+				continue;
+			}
+
+			// Copied only if a builder hasn't converted them already
+			if (args == bindArgs) {
+				args = bindArgs.clone();
+			}
+			args[i] = toBindArgument(bindArgs[i]);
+		}
+
+		Cache.openDatabase().execSQL(sql, args);
 	}
 
 	public static void rename(Class<? extends Model> from, Class<? extends Model> to) {
@@ -157,12 +211,21 @@ public final class SQLiteUtils {
 	}
 
 	public static <T extends Model> CursorList<T> rawQuery(Class<? extends Model> type, String sql, String[] selectionArgs) {
+		return rawQuery(type, sql, selectionArgs, null);
+	}
+
+	/**
+	 * @param bindArgs bound with their SQLite type, see {@link #toBindArgument}
+	 * @param prefetcher loads referenced and joined models, may be null
+	 */
+	public static <T extends Model> CursorList<T> rawQuery(Class<? extends Model> type, String sql, Object[] bindArgs,
+			ForeignKeyPrefetcher prefetcher) {
 		CursorList<T> entities;
 
-		Yield yield = new Yield().begin();
+		Yield yield = new Yield().beginRead();
 		try {
-			Cursor cursor = Cache.openDatabase().rawQuery(sql, selectionArgs);
-			entities = processCursor(type, cursor);
+			Cursor cursor = rawQuery(sql, bindArgs);
+			entities = processCursor(type, cursor, prefetcher);
 			yield.success();
 		} finally {
 			yield.end();
@@ -171,62 +234,192 @@ public final class SQLiteUtils {
 		return entities;
 	}
 
-	public static int delete(String tableName, String sql, String[] selectionArgs) {
-		int rows;
+	/**
+	 * Like {@link SQLiteDatabase#rawQuery}, but binds numbers as INTEGER or REAL and
+	 * byte arrays as BLOB instead of binding every argument as TEXT.
+	 */
+	public static Cursor rawQuery(String sql, Object[] bindArgs) {
+		final SQLiteDatabase db = Cache.openDatabase();
+		if (bindArgs == null || bindArgs.length == 0) {
+			return db.rawQuery(sql, null);
+		}
 
-		Yield yield = new Yield().begin();
+		return db.rawQueryWithFactory(new BindingCursorFactory(bindArgs), sql, null, null);
+	}
+
+	/**
+	 * @return value converted to what SQLite stores for it: Long, Double, String,
+	 *         byte[] or null. Models become their id, enums their name and values with
+	 *         a registered {@link TypeSerializer} are serialized first.
+	 */
+	public static Object toBindArgument(Object value) {
+		if (value == null) {
+			return null;
+		}
+
+		final TypeSerializer typeSerializer = Cache.getParserForType(value.getClass());
+		if (typeSerializer != null) {
+			value = typeSerializer.serialize(value);
+			if (value == null) {
+				return null;
+			}
+		}
+
+		if (value instanceof Float || value instanceof Double) {
+			return ((Number) value).doubleValue();
+		}
+		else if (value instanceof Byte || value instanceof Short || value instanceof Integer || value instanceof Long) {
+			return ((Number) value).longValue();
+		}
+		else if (value instanceof Boolean) {
+			return ((Boolean) value) ? 1L : 0L;
+		}
+		else if (value instanceof byte[]) {
+			return value;
+		}
+		else if (value instanceof Model) {
+			return ((Model) value).getId();
+		}
+		else if (value instanceof Ref) {
+			return ((Ref<?>) value).getId();
+		}
+		else if (value instanceof Enum) {
+			return ((Enum<?>) value).name();
+		}
+
+		return value.toString();
+	}
+
+	/**
+	 * Bind args to the parameters 1..n of program. Args not converted by
+	 * {@link #toBindArgument} yet, as {@link com.activeandroid.query.From#getBindArguments}
+	 * does, are converted first.
+	 */
+	public static void bindArguments(SQLiteProgram program, Object[] args) {
+		for (int i = 0; i < args.length; i++) {
+			final Object value = isBindArgument(args[i]) ? args[i] : toBindArgument(args[i]);
+			final int index = i + 1;
+
+			if (value == null) {
+				program.bindNull(index);
+			}
+			else if (value instanceof Long) {
+				program.bindLong(index, (Long) value);
+			}
+			else if (value instanceof Double) {
+				program.bindDouble(index, (Double) value);
+			}
+			else if (value instanceof byte[]) {
+				program.bindBlob(index, (byte[]) value);
+			}
+			else {
+				program.bindString(index, (String) value);
+			}
+		}
+	}
+
+	/**
+	 * Run a query selecting a single number, such as a COUNT(*), through a compiled
+	 * statement kept by {@link Cache#acquireStatement}.
+	 */
+	public static long simpleQueryForLong(String sql, Object[] bindArgs) {
+		long value;
+
+		Yield yield = new Yield().beginRead();
+		final SQLiteStatement statement = Cache.acquireStatement(sql);
 		try {
-			rows = Cache.openDatabase().delete(tableName, sql, selectionArgs);
+			bindArguments(statement, bindArgs);
+			value = statement.simpleQueryForLong();
 			yield.success();
 		} finally {
+			Cache.releaseStatement(sql, statement);
 			yield.end();
 		}
 
-		return rows;
+		return value;
 	}
 
-	public static long insert(String table, String nullColumnHook, ContentValues values) {
-		long id = -1;
+	/**
+	 * @return the first column of the first row, or defaultValue if there is no row or
+	 *         the value is NULL
+	 */
+	public static double simpleQueryForDouble(String sql, Object[] bindArgs, double defaultValue) {
+		double value = defaultValue;
 
-		Yield yield = new Yield().begin();
+		Yield yield = new Yield().beginRead();
 		try {
-			if (showException())
-				id = Cache.openDatabase().insert(table, nullColumnHook, values);
-			else
-				id = Cache.openDatabase().insertOrThrow(table, nullColumnHook, values);
+			final Cursor cursor = rawQuery(sql, bindArgs);
+			try {
+				if (cursor.moveToFirst() && !cursor.isNull(0)) {
+					value = cursor.getDouble(0);
+				}
+			} finally {
+				cursor.close();
+			}
 			yield.success();
-		} catch (Exception e) {
 		} finally {
 			yield.end();
 		}
 
-		return id;
+		return value;
 	}
 
-	public static long replace(String table, String nullColumnHook, ContentValues values) {
-		long id = -1;
+	/**
+	 * @return the first column of every row, NULL read as 0
+	 */
+	public static long[] queryForLongs(String sql, Object[] bindArgs) {
+		long[] values;
 
-		Yield yield = new Yield().begin();
+		Yield yield = new Yield().beginRead();
 		try {
-			if (showException())
-				id = Cache.openDatabase().replace(table, nullColumnHook, values);
-			else
-				id = Cache.openDatabase().replaceOrThrow(table, nullColumnHook, values);
+			final Cursor cursor = rawQuery(sql, bindArgs);
+			try {
+				values = new long[cursor.getCount()];
+				for (int i = 0; cursor.moveToNext(); i++) {
+					values[i] = cursor.getLong(0);
+				}
+			} finally {
+				cursor.close();
+			}
 			yield.success();
-		} catch (Exception e) {
 		} finally {
 			yield.end();
 		}
 
-		return id;
+		return values;
+	}
+
+	/**
+	 * @return the first column of every row
+	 */
+	public static String[] queryForStrings(String sql, Object[] bindArgs) {
+		String[] values;
+
+		Yield yield = new Yield().beginRead();
+		try {
+			final Cursor cursor = rawQuery(sql, bindArgs);
+			try {
+				values = new String[cursor.getCount()];
+				for (int i = 0; cursor.moveToNext(); i++) {
+					values[i] = cursor.getString(0);
+				}
+			} finally {
+				cursor.close();
+			}
+			yield.success();
+		} finally {
+			yield.end();
+		}
+
+		return values;
 	}
 
-	public static int update(String table, ContentValues values, String whereClause, String[] where) {
+	public static int delete(String tableName, String sql, String[] selectionArgs) {
 		int rows;
 
 		Yield yield = new Yield().begin();
 		try {
-			rows = Cache.openDatabase().update(table, values, whereClause, where);
+			rows = Cache.openDatabase().delete(tableName, sql, selectionArgs);
 			yield.success();
 		} finally {
 			yield.end();
@@ -235,11 +428,89 @@ public final class SQLiteUtils {
 		return rows;
 	}
 
+	/**
+	 * In group commit mode, see {@link WriteQueue#isGroupCommit()}, the row is written
+	 * by the writer thread and committed with the rows written around it.
+	 */
+	public static long insert(final String table, final String nullColumnHook, final ContentValues values) {
+		final boolean show = showException();
+		if (WriteQueue.isGroupCommit()) {
+			return WriteQueue.execute(new Callable<Long>() {
+				@Override
+				public Long call() {
+					return insert(table, nullColumnHook, values, show);
+				}
+			});
+		}
+
+		return insert(table, nullColumnHook, values, show);
+	}
+
+	public static long replace(final String table, final String nullColumnHook, final ContentValues values) {
+		final boolean show = showException();
+		if (WriteQueue.isGroupCommit()) {
+			return WriteQueue.execute(new Callable<Long>() {
+				@Override
+				public Long call() {
+					return replace(table, nullColumnHook, values, show);
+				}
+			});
+		}
+
+		return replace(table, nullColumnHook, values, show);
+	}
+
+	public static int update(final String table, final ContentValues values, final String whereClause,
+			final String[] where) {
+		if (WriteQueue.isGroupCommit()) {
+			return WriteQueue.execute(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					return updateRows(table, values, whereClause, where);
+				}
+			});
+		}
+
+		return updateRows(table, values, whereClause, where);
+	}
+
+	/**
+	 * Execute a compiled INSERT, errors are swallowed like {@link #insert}.
+	 *
+	 * @return the row id, or -1 on failure
+	 */
+	public static long executeInsert(SQLiteStatement statement) {
+		long id = -1;
+
+		Yield yield = new Yield().begin();
+		try {
+			id = statement.executeInsert();
+			yield.success();
+		} catch (SQLException e) {
+			if (showException())
+				Log.e("Error inserting", e);
+		} finally {
+			yield.end();
+		}
+
+		return id;
+	}
+
+	public static void executeUpdate(SQLiteStatement statement) {
+		Yield yield = new Yield().begin();
+		try {
+			statement.execute();
+			yield.success();
+		} finally {
+			yield.end();
+		}
+	}
+
 	public static Cursor query(String table, String[] projection, String selection, String[] selectionArgs,
 			String groupBy, String having, String sortOrder) {
 		Cursor cursor;
 
-		Yield yield = new Yield().begin();
+		Yield yield = new Yield().beginRead();
 		try {
 			cursor = Cache.openDatabase().query(table, projection, selection, selectionArgs,
 					groupBy, having, sortOrder);
@@ -252,9 +523,17 @@ public final class SQLiteUtils {
 	}
 
 	public static <T extends Model> T rawQuerySingle(Class<? extends Model> type, String sql, String[] selectionArgs) {
+		return rawQuerySingle(type, sql, selectionArgs, null);
+	}
+
+	/**
+	 * @param prefetcher loads referenced and joined models, may be null
+	 */
+	public static <T extends Model> T rawQuerySingle(Class<? extends Model> type, String sql, Object[] bindArgs,
+			ForeignKeyPrefetcher prefetcher) {
 		T item = null;
 
-		CursorList<T> entities = rawQuery(type, sql, selectionArgs);
+		CursorList<T> entities = rawQuery(type, sql, bindArgs, prefetcher);
 		if (entities.size() > 0) {
 			item = entities.get(0);
 		}
@@ -551,6 +830,14 @@ public final class SQLiteUtils {
 			type = typeSerializer.getSerializedType();
 		}
 
+		// A Ref<T> column is stored exactly like a T column
+		if (type.equals(Ref.class)) {
+			final Class<? extends Model> referencedType = ColumnInfo.resolveReferencedType(field, type);
+			if (referencedType != null) {
+				type = referencedType;
+			}
+		}
+
 		if (TYPE_MAP.containsKey(type)) {
 			definition.append(name);
 			definition.append(" ");
@@ -606,6 +893,11 @@ public final class SQLiteUtils {
 	}
 
 	public static <T extends Model> CursorList<T> processCursor(Class<? extends Model> type, Cursor cursor) {
+		return processCursor(type, cursor, null);
+	}
+
+	public static <T extends Model> CursorList<T> processCursor(Class<? extends Model> type, Cursor cursor,
+			ForeignKeyPrefetcher prefetcher) {
 		SmartCursorWrapper cursorWrapper = new SmartCursorWrapper(cursor);
 		cursorWrapper.setOnCloseListener(new SmartCursorWrapper.OnCloseListener() {
 			@Override
@@ -617,7 +909,7 @@ public final class SQLiteUtils {
 				ActiveAndroid.endReleaseTransaction();
 			}
 		});
-		SimpleCursorList<T> list = new SimpleCursorList<T>(cursorWrapper, new ModelCursorMarshaller<T>(type));
+		SimpleCursorList<T> list = new SimpleCursorList<T>(cursorWrapper, new ModelCursorMarshaller<T>(type, prefetcher));
 		/*
 		list.setMarshallerListener(new MarshallerListener<T>() {
 			@Override
@@ -643,26 +935,93 @@ public final class SQLiteUtils {
 		return list;
 	}
 
-	public static void showException(boolean show) {
-		final Integer tid = android.os.Process.myTid();
+	private static long insert(String table, String nullColumnHook, ContentValues values, boolean show) {
+		long id = -1;
 
-		final int index = sNoException.indexOf(tid);
+		Yield yield = new Yield().begin();
+		try {
+			if (show)
+				id = Cache.openDatabase().insert(table, nullColumnHook, values);
+			else
+				id = Cache.openDatabase().insertOrThrow(table, nullColumnHook, values);
+			yield.success();
+		} catch (Exception e) {
+		} finally {
+			yield.end();
+		}
+
+		return id;
+	}
+
+	private static long replace(String table, String nullColumnHook, ContentValues values, boolean show) {
+		long id = -1;
+
+		Yield yield = new Yield().begin();
+		try {
+			if (show)
+				id = Cache.openDatabase().replace(table, nullColumnHook, values);
+			else
+				id = Cache.openDatabase().replaceOrThrow(table, nullColumnHook, values);
+			yield.success();
+		} catch (Exception e) {
+		} finally {
+			yield.end();
+		}
+
+		return id;
+	}
+
+	private static int updateRows(String table, ContentValues values, String whereClause, String[] where) {
+		int rows;
+
+		Yield yield = new Yield().begin();
+		try {
+			rows = Cache.openDatabase().update(table, values, whereClause, where);
+			yield.success();
+		} finally {
+			yield.end();
+		}
+
+		return rows;
+	}
+
+	public static void showException(boolean show) {
 		if (show) {
-			if (index != -1)
-				sNoException.remove(index);
+			sNoException.remove();
 		} else {
-			if (index == -1)
-				sNoException.add(tid);
+			sNoException.set(Boolean.TRUE);
 		}
 	}
 
+	/**
+	 * @return true if value is of a type {@link #toBindArgument} returns
+	 */
+	private static boolean isBindArgument(Object value) {
+		return value == null || value instanceof Long || value instanceof Double || value instanceof String
+				|| value instanceof byte[];
+	}
+
 	private static boolean showException() {
-		final Integer tid = android.os.Process.myTid();
+		return sNoException.get() == null;
+	}
 
-		final int index = sNoException.indexOf(tid);
-		if (index != -1)
-			return false;
-		else
-			return true;
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final class BindingCursorFactory implements SQLiteDatabase.CursorFactory {
+		private final Object[] mBindArgs;
+
+		BindingCursorFactory(Object[] bindArgs) {
+			mBindArgs = bindArgs;
+		}
+
+		// The constructor without db is API 11+
+		@SuppressWarnings("deprecation")
+		@Override
+		public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver driver, String editTable, SQLiteQuery query) {
+			bindArguments(query, mBindArgs);
+			return new SQLiteCursor(db, driver, editTable, query);
+		}
 	}
 }
@@ -0,0 +1,91 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Date;
+
+import com.activeandroid.Model;
+import com.activeandroid.Ref;
+import com.activeandroid.annotation.Column;
+import com.activeandroid.annotation.Table;
+
+/**
+ * A column of every kind the generated ModelBinder handles.
+ */
+@Table(name = "BinderModel")
+public class BinderModel extends Model {
+	public enum Level {
+		LOW, HIGH
+	}
+
+	@Column(name = "BooleanPrimitive")
+	public boolean booleanPrimitive;
+
+	@Column(name = "BytePrimitive")
+	public byte bytePrimitive;
+
+	@Column(name = "ShortPrimitive")
+	public short shortPrimitive;
+
+	@Column(name = "IntPrimitive")
+	public int intPrimitive;
+
+	@Column(name = "LongPrimitive")
+	public long longPrimitive;
+
+	@Column(name = "FloatPrimitive")
+	public float floatPrimitive;
+
+	@Column(name = "DoublePrimitive")
+	public double doublePrimitive;
+
+	@Column(name = "CharPrimitive")
+	public char charPrimitive;
+
+	@Column(name = "BooleanBoxed")
+	public Boolean booleanBoxed;
+
+	@Column(name = "IntegerBoxed")
+	public Integer integerBoxed;
+
+	@Column(name = "LongBoxed")
+	public Long longBoxed;
+
+	@Column(name = "DoubleBoxed")
+	public Double doubleBoxed;
+
+	@Column(name = "CharacterBoxed")
+	public Character characterBoxed;
+
+	@Column(name = "String")
+	public String string;
+
+	@Column(name = "Bytes")
+	public byte[] bytes;
+
+	@Column(name = "Level")
+	public Level level;
+
+	@Column(name = "Date")
+	public Date date;
+
+	@Column(name = "Mock")
+	public MockModel mock;
+
+	@Column(name = "MockRef")
+	public Ref<MockModel> mockRef;
+}
@@ -0,0 +1,172 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.Date;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.Model;
+import com.activeandroid.Ref;
+import com.activeandroid.query.Delete;
+
+/**
+ * Round trips through the ModelBinders the annotation processor generates for the
+ * test models, and the fallbacks to reflection.
+ */
+public class BinderTest extends ActiveAndroidTestCase {
+	@Override
+	protected void tearDown() throws Exception {
+		new Delete().from(BinderModel.class).execute();
+		new Delete().from(SerializedEnumModel.class).execute();
+		new Delete().from(MismatchedModel.class).execute();
+		new Delete().from(MockModel.class).execute();
+		super.tearDown();
+	}
+
+	public void testBinderIsGenerated() {
+		assertNotNull(Cache.getTableInfo(BinderModel.class).getBinder());
+	}
+
+	public void testBindContentValues() {
+		final MockModel mock = new MockModel();
+		mock.save();
+		final BinderModel model = createModel(mock);
+
+		final ContentValues values = model.toContentValues();
+		assertEquals(Integer.valueOf(42), values.get("IntPrimitive"));
+		assertEquals(Long.valueOf(1L << 40), values.get("LongPrimitive"));
+		assertEquals("x", values.get("CharPrimitive"));
+		assertEquals("y", values.get("CharacterBoxed"));
+		assertEquals("HIGH", values.get("Level"));
+		assertEquals(Long.valueOf(model.date.getTime()), values.get("Date"));
+		assertEquals(mock.getId(), values.get("Mock"));
+		assertEquals(mock.getId(), values.get("MockRef"));
+		assertTrue(values.containsKey("BooleanBoxed"));
+		assertNull(values.get("BooleanBoxed"));
+	}
+
+	public void testRoundTrip() {
+		final MockModel mock = new MockModel();
+		mock.save();
+		final BinderModel model = createModel(mock);
+
+		// Inserted through the compiled statement, read back with the cached indices
+		model.save();
+		assertModel(model, reload(model));
+
+		// And updated
+		model.intPrimitive = -7;
+		model.string = null;
+		model.level = BinderModel.Level.LOW;
+		model.mock = null;
+		model.save();
+		assertModel(model, reload(model));
+	}
+
+	public void testSerializedInlinedTypeFallsBackToReflection() {
+		// PrioritySerializer is found by the class scan, the generated code would store names
+		assertNull(Cache.getTableInfo(SerializedEnumModel.class).getBinder());
+
+		final SerializedEnumModel model = new SerializedEnumModel();
+		model.priority = SerializedEnumModel.Priority.URGENT;
+		model.save();
+
+		final Cursor cursor = ActiveAndroid.getDatabase().rawQuery("SELECT Priority FROM SerializedEnumModel WHERE Id = ?",
+				new String[] { model.getId().toString() });
+		try {
+			assertTrue(cursor.moveToFirst());
+			assertEquals(SerializedEnumModel.Priority.URGENT.ordinal(), cursor.getInt(0));
+		}
+		finally {
+			cursor.close();
+		}
+
+		Cache.removeEntity(model);
+		assertEquals(SerializedEnumModel.Priority.URGENT, Model.load(SerializedEnumModel.class, model.getId()).priority);
+	}
+
+	public void testMismatchedBinderFallsBackToReflection() {
+		assertNull(Cache.getTableInfo(MismatchedModel.class).getBinder());
+
+		final MismatchedModel model = new MismatchedModel();
+		model.setName("name");
+		model.save();
+
+		Cache.removeEntity(model);
+		assertEquals("name", Model.load(MismatchedModel.class, model.getId()).getName());
+	}
+
+	private static BinderModel createModel(MockModel mock) {
+		final BinderModel model = new BinderModel();
+		model.booleanPrimitive = true;
+		model.bytePrimitive = 3;
+		model.shortPrimitive = -300;
+		model.intPrimitive = 42;
+		model.longPrimitive = 1L << 40;
+		model.floatPrimitive = 1.5f;
+		model.doublePrimitive = -2.25;
+		model.charPrimitive = 'x';
+		model.booleanBoxed = null;
+		model.integerBoxed = 7;
+		model.longBoxed = -8L;
+		model.doubleBoxed = 0.5;
+		model.characterBoxed = 'y';
+		model.string = "string";
+		model.bytes = new byte[] { 1, 2, 3 };
+		model.level = BinderModel.Level.HIGH;
+		model.date = new Date(1234567890L);
+		model.mock = mock;
+		model.mockRef = Ref.to(MockModel.class, mock.getId());
+		return model;
+	}
+
+	private static BinderModel reload(BinderModel model) {
+		Cache.removeEntity(model);
+		final BinderModel loaded = Model.load(BinderModel.class, model.getId());
+		assertNotSame(model, loaded);
+		return loaded;
+	}
+
+	private static void assertModel(BinderModel expected, BinderModel actual) {
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.booleanPrimitive, actual.booleanPrimitive);
+		assertEquals(expected.bytePrimitive, actual.bytePrimitive);
+		assertEquals(expected.shortPrimitive, actual.shortPrimitive);
+		assertEquals(expected.intPrimitive, actual.intPrimitive);
+		assertEquals(expected.longPrimitive, actual.longPrimitive);
+		assertEquals(expected.floatPrimitive, actual.floatPrimitive, 0f);
+		assertEquals(expected.doublePrimitive, actual.doublePrimitive, 0d);
+		assertEquals(expected.charPrimitive, actual.charPrimitive);
+		assertEquals(expected.booleanBoxed, actual.booleanBoxed);
+		assertEquals(expected.integerBoxed, actual.integerBoxed);
+		assertEquals(expected.longBoxed, actual.longBoxed);
+		assertEquals(expected.doubleBoxed, actual.doubleBoxed);
+		assertEquals(expected.characterBoxed, actual.characterBoxed);
+		assertEquals(expected.string, actual.string);
+		assertTrue(Arrays.equals(expected.bytes, actual.bytes));
+		assertEquals(expected.level, actual.level);
+		assertEquals(expected.date, actual.date);
+		assertEquals(expected.mock != null ? expected.mock.getId() : null,
+				actual.mock != null ? actual.mock.getId() : null);
+		assertEquals(expected.mockRef.getId(), actual.mockRef.getId());
+	}
+}
@@ -0,0 +1,77 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.Configuration;
+import com.activeandroid.Model;
+
+public class CacheBudgetTest extends ActiveAndroidTestCase {
+	// Room for about a thousand MockModels
+	private static final int CACHE_MAX_BYTES = 64 * 1024;
+
+	private final List<Model> mModels = new ArrayList<Model>();
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		ActiveAndroid.dispose();
+		ActiveAndroid.initialize(new Configuration.Builder(getContext())
+				.setCacheMaxBytes(CACHE_MAX_BYTES)
+				.create());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Model.deleteAll(mModels);
+		super.tearDown();
+	}
+
+	public void testBusyTableLeavesRoomForOthers() {
+		// Fill the budget several times over with one table
+		for (int i = 0; i < 4000; i++) {
+			mModels.add(new MockModel());
+		}
+		Model.saveAll(mModels);
+		for (Model model : mModels) {
+			Cache.addEntity(model);
+		}
+
+		final List<OtherMockModel> others = new ArrayList<OtherMockModel>();
+		for (int i = 0; i < 10; i++) {
+			others.add(new OtherMockModel());
+		}
+		Model.saveAll(others);
+		mModels.addAll(others);
+		for (OtherMockModel other : others) {
+			Cache.addEntity(other);
+		}
+
+		for (OtherMockModel other : others) {
+			assertSame(other, Cache.getEntity(OtherMockModel.class, other.getId()));
+		}
+
+		// The busy table was trimmed instead
+		assertTrue(Cache.getStats(MockModel.class).getEvictionCount() > 0);
+		assertTrue(Cache.getStats(MockModel.class).getSize() < 4000);
+	}
+}
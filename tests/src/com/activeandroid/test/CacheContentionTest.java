@@ -0,0 +1,108 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+import com.activeandroid.Cache;
+import com.activeandroid.Model;
+
+/**
+ * Hammers the entity cache and the metadata lookups from 1, 2, 4 and 8 threads.
+ * Throughput per thread count is logged under the "CacheContention" tag.
+ */
+public class CacheContentionTest extends ActiveAndroidTestCase {
+	private static final int MODELS = 256;
+	private static final int LOOKUPS_PER_THREAD = 200000;
+
+	private List<MockModel> mModels;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		mModels = new ArrayList<MockModel>();
+		for (int i = 0; i < MODELS; i++) {
+			mModels.add(new MockModel());
+		}
+
+		Model.saveAll(mModels);
+		for (MockModel model : mModels) {
+			Cache.addEntity(model);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Model.deleteAll(mModels);
+		super.tearDown();
+	}
+
+	public void testConcurrentLookups() throws Exception {
+		for (int threads = 1; threads <= 8; threads *= 2) {
+			final long elapsed = runLookups(threads);
+			final long lookups = (long) threads * LOOKUPS_PER_THREAD;
+
+			Log.i("CacheContention", String.format("%d threads: %d lookups in %d ms, %d lookups/ms",
+					threads, lookups, elapsed, lookups / Math.max(elapsed, 1)));
+		}
+	}
+
+	private long runLookups(int threads) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicInteger misses = new AtomicInteger();
+
+		for (int t = 0; t < threads; t++) {
+			final int offset = t;
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+							final MockModel model = mModels.get((i + offset) % MODELS);
+							Cache.getTableInfo(MockModel.class);
+							if (Cache.getEntity(MockModel.class, model.getId()) != model) {
+								misses.incrementAndGet();
+							}
+						}
+					}
+					catch (InterruptedException e) {
+						misses.incrementAndGet();
+					}
+					finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+
+		final long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		final long elapsed = (System.nanoTime() - begin) / 1000000;
+
+		assertEquals(0, misses.get());
+		return elapsed;
+	}
+}
@@ -0,0 +1,105 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.ref.WeakReference;
+
+import android.os.SystemClock;
+
+import com.activeandroid.Cache;
+import com.activeandroid.CacheStats;
+import com.activeandroid.Model;
+
+public class CachePolicyTest extends ActiveAndroidTestCase {
+	public void testNoneNeverCaches() {
+		final UncachedModel model = new UncachedModel();
+		model.save();
+
+		Cache.addEntity(model);
+		assertNull(Cache.getEntity(UncachedModel.class, model.getId()));
+		assertNull(Cache.getStats(UncachedModel.class));
+
+		model.delete();
+	}
+
+	public void testWeakLetsCollectorReclaim() {
+		WeakCachedModel model = new WeakCachedModel();
+		model.save();
+		final long id = model.getId();
+
+		Cache.addEntity(model);
+		assertSame(model, Cache.getEntity(WeakCachedModel.class, id));
+
+		final WeakReference<Model> collected = new WeakReference<Model>(model);
+		model = null;
+		for (int i = 0; i < 10 && collected.get() != null; i++) {
+			Runtime.getRuntime().gc();
+			SystemClock.sleep(10);
+		}
+
+		assertNull(collected.get());
+		assertNull(Cache.getEntity(WeakCachedModel.class, id));
+
+		Model.delete(WeakCachedModel.class, id);
+	}
+
+	public void testSoftKeepsReachableModel() {
+		final SoftCachedModel model = new SoftCachedModel();
+		model.save();
+
+		Cache.addEntity(model);
+		Runtime.getRuntime().gc();
+		assertSame(model, Cache.getEntity(SoftCachedModel.class, model.getId()));
+
+		model.delete();
+	}
+
+	public void testTtlExpiresEntries() {
+		final ExpiringModel model = new ExpiringModel();
+		model.save();
+
+		Cache.addEntity(model);
+		assertSame(model, Cache.getEntity(ExpiringModel.class, model.getId()));
+
+		final long evictions = Cache.getStats(ExpiringModel.class).getEvictionCount();
+		SystemClock.sleep(ExpiringModel.TTL * 2);
+
+		assertNull(Cache.getEntity(ExpiringModel.class, model.getId()));
+		assertEquals(evictions + 1, Cache.getStats(ExpiringModel.class).getEvictionCount());
+
+		model.delete();
+	}
+
+	public void testStatsCountHitsMissesAndPuts() {
+		final MockModel model = new MockModel();
+		model.save();
+
+		final CacheStats before = Cache.getStats(MockModel.class);
+		Cache.addEntity(model);
+		assertSame(model, Cache.getEntity(MockModel.class, model.getId()));
+		Cache.removeEntity(model);
+		assertNull(Cache.getEntity(MockModel.class, model.getId()));
+		final CacheStats after = Cache.getStats(MockModel.class);
+
+		assertEquals(before.getPutCount() + 1, after.getPutCount());
+		assertEquals(before.getHitCount() + 1, after.getHitCount());
+		assertEquals(before.getMissCount() + 1, after.getMissCount());
+		assertEquals(before.getSize(), after.getSize());
+
+		model.delete();
+	}
+}
@@ -0,0 +1,80 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import com.activeandroid.Cache;
+import com.activeandroid.Model;
+
+/**
+ * Records the URIs it's notified of. Without a handler notifications arrive on a
+ * binder thread, so wait for them with {@link #awaitChanges(int, long)}.
+ */
+public class ChangeRecorder extends ContentObserver {
+	private final List<Uri> mChanges = new ArrayList<Uri>();
+
+	public ChangeRecorder() {
+		super(null);
+	}
+
+	public static ChangeRecorder register(Class<? extends Model> type) {
+		final ChangeRecorder recorder = new ChangeRecorder();
+		Model.registerContentObserver(type, true, recorder);
+		return recorder;
+	}
+
+	public void unregister() {
+		Cache.getContext().getContentResolver().unregisterContentObserver(this);
+	}
+
+	@Override
+	public void onChange(boolean selfChange) {
+		onChange(selfChange, null);
+	}
+
+	@Override
+	public synchronized void onChange(boolean selfChange, Uri uri) {
+		mChanges.add(uri);
+		notifyAll();
+	}
+
+	/**
+	 * @return true once count changes were recorded, false if timeoutMillis passed
+	 *         first
+	 */
+	public synchronized boolean awaitChanges(int count, long timeoutMillis) throws InterruptedException {
+		final long deadline = SystemClock.uptimeMillis() + timeoutMillis;
+		while (mChanges.size() < count) {
+			final long remaining = deadline - SystemClock.uptimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			wait(remaining);
+		}
+		return true;
+	}
+
+	public synchronized List<Uri> getChanges() {
+		return new ArrayList<Uri>(mChanges);
+	}
+}
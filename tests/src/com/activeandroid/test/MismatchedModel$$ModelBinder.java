@@ -0,0 +1,49 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import com.activeandroid.ModelBinder;
+
+/**
+ * Stands in for a binder generated from an older version of the model. TableInfo
+ * must never use it.
+ */
+public final class MismatchedModel$$ModelBinder extends ModelBinder<MismatchedModel> {
+	@Override
+	public void bind(MismatchedModel model, ContentValues values) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void bind(MismatchedModel model, SQLiteStatement statement, int[] bindIndices) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String[] getColumnNames() {
+		return new String[] { "Title" };
+	}
+
+	@Override
+	public int load(MismatchedModel model, Cursor cursor, int[] columnIndices) {
+		throw new UnsupportedOperationException();
+	}
+}
@@ -0,0 +1,218 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.database.sqlite.SQLiteConstraintException;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Configuration;
+import com.activeandroid.Model;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Select;
+
+public class ModelTest extends ActiveAndroidTestCase {
+	private static final long TIMEOUT = 5000;
+	private static final long SPECIFIC_ID = 1000000;
+
+	public void testSaveAllCommitsInChunks() {
+		final List<MockModel> models = createModels(1200);
+		Model.saveAll(models, 500);
+
+		assertFalse(ActiveAndroid.inTransaction());
+		for (MockModel model : models) {
+			assertNotNull(model.getId());
+		}
+		assertEquals(1200, countFrom(models.get(0)));
+
+		Model.deleteAll(models, 500);
+		assertEquals(0, countFrom(models.get(0)));
+	}
+
+	public void testSaveAllNestedCommitsWithOuterTransaction() {
+		final List<MockModel> models = createModels(30);
+
+		ActiveAndroid.beginTransaction();
+		try {
+			Model.saveAll(models, 10);
+			assertTrue(ActiveAndroid.inTransaction());
+		}
+		finally {
+			// Rolled back, the chunks must not have been committed on their own
+			ActiveAndroid.endTransaction();
+		}
+
+		assertEquals(0, countFrom(models.get(0)));
+	}
+
+	public void testDeleteAllSplitsBindArguments() {
+		// More ids than SQLITE_MAX_VARIABLE_NUMBER in one chunk
+		final List<MockModel> models = createModels(2500);
+		Model.saveAll(models);
+
+		Model.deleteAll(models, 5000);
+		assertEquals(0, countFrom(models.get(0)));
+	}
+
+	public void testRejectsNonPositiveChunkSize() {
+		final List<MockModel> models = createModels(1);
+
+		try {
+			Model.saveAll(models, 0);
+			fail("chunkSize 0 is rejected");
+		}
+		catch (IllegalArgumentException e) {
+		}
+
+		try {
+			Model.deleteAll(models, -1);
+			fail("Negative chunkSize is rejected");
+		}
+		catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testFailedChunkStillNotifiesCommittedOnes() throws Exception {
+		final MockModel parent = new MockModel();
+		final MockModel newParent = new MockModel();
+		final MockModel deleted = new MockModel();
+		parent.save();
+		newParent.save();
+		deleted.save();
+		deleted.delete();
+
+		final List<ChildModel> children = new ArrayList<ChildModel>();
+		for (int i = 0; i < 5; i++) {
+			final ChildModel child = new ChildModel(parent);
+			child.save();
+			child.parent = (i < 4) ? newParent : deleted;
+			children.add(child);
+		}
+
+		final ChangeRecorder recorder = ChangeRecorder.register(ChildModel.class);
+		try {
+			// The fifth update breaks the foreign key, the first two chunks are committed
+			Model.saveAll(children, 2);
+			fail("The failing chunk throws");
+		}
+		catch (SQLiteConstraintException e) {
+		}
+		finally {
+			recorder.unregister();
+		}
+
+		assertTrue(recorder.awaitChanges(1, TIMEOUT));
+		assertEquals(4, new Select().from(ChildModel.class).where("Parent = ?", newParent.getId()).count());
+		assertEquals(1, new Select().from(ChildModel.class).where("Parent = ?", parent.getId()).count());
+
+		new Delete().from(ChildModel.class).execute();
+		parent.delete();
+		newParent.delete();
+	}
+
+	public void testUpdateWithoutColumnsButId() {
+		final MockModel model = new MockModel();
+		model.save();
+
+		// MockModel has no update statement, saving again changes nothing
+		final Long id = model.getId();
+		assertEquals(id, model.save());
+		assertEquals(1, new Select().from(MockModel.class).where("Id = ?", id).count());
+
+		model.delete();
+	}
+
+	public void testReadOnlyColumnIsNotWritten() {
+		final ReadOnlyModel model = new ReadOnlyModel("name");
+		model.computed = "ignored";
+
+		// The table has no Computed column, binding it would fail the insert and update
+		model.save();
+		assertTrue(model.getId() > 0);
+		model.name = "renamed";
+		model.save();
+
+		ActiveAndroid.clearCache();
+		final ReadOnlyModel loaded = new Select("*", "upper(Name) AS Computed").from(ReadOnlyModel.class)
+				.where("Id = ?", model.getId()).executeSingle();
+		assertEquals("renamed", loaded.name);
+		assertEquals("RENAMED", loaded.computed);
+
+		model.delete();
+	}
+
+	public void testSpecificIdReplaces() {
+		final ReadOnlyModel first = new ReadOnlyModel("first");
+		first.setSpecificId(SPECIFIC_ID, true);
+		first.save();
+
+		final ReadOnlyModel second = new ReadOnlyModel("second");
+		second.setSpecificId(SPECIFIC_ID, true);
+		second.save();
+
+		assertEquals(SPECIFIC_ID, first.getId().longValue());
+		assertEquals(SPECIFIC_ID, second.getId().longValue());
+		assertEquals(1, new Select().from(ReadOnlyModel.class).where("Id = ?", SPECIFIC_ID).count());
+
+		ActiveAndroid.clearCache();
+		assertEquals("second", Model.load(ReadOnlyModel.class, SPECIFIC_ID).name);
+
+		second.delete();
+	}
+
+	public void testReusedStatementsKeepNoBindings() {
+		// More saves than idle statements are kept, nulls following values and back
+		final List<ReadOnlyModel> models = new ArrayList<ReadOnlyModel>();
+		for (int i = 0; i < 10; i++) {
+			final ReadOnlyModel model = new ReadOnlyModel(i % 2 == 0 ? "name" + i : null);
+			model.save();
+			models.add(model);
+		}
+		for (ReadOnlyModel model : models) {
+			model.name = (model.name == null) ? "updated" : null;
+			model.save();
+		}
+
+		// Statements compiled for the previous database aren't reused
+		ActiveAndroid.dispose();
+		ActiveAndroid.initialize(new Configuration.Builder(getContext()).create());
+		models.get(0).name = "reinitialized";
+		models.get(0).save();
+
+		for (ReadOnlyModel model : models) {
+			final ReadOnlyModel loaded = Model.load(ReadOnlyModel.class, model.getId());
+			assertNotSame(model, loaded);
+			assertEquals(model.name, loaded.name);
+		}
+
+		Model.deleteAll(models);
+	}
+
+	private static List<MockModel> createModels(int count) {
+		final List<MockModel> models = new ArrayList<MockModel>(count);
+		for (int i = 0; i < count; i++) {
+			models.add(new MockModel());
+		}
+		return models;
+	}
+
+	private static long countFrom(MockModel first) {
+		return new Select().from(MockModel.class).where("Id >= ?", first.getId()).count();
+	}
+}
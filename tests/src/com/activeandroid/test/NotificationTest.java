@@ -0,0 +1,149 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashSet;
+import java.util.Set;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Configuration;
+import com.activeandroid.content.ContentProvider;
+import com.activeandroid.query.Delete;
+
+public class NotificationTest extends ActiveAndroidTestCase {
+	private static final long TIMEOUT = 5000;
+	// How long to wait for a notification that shouldn't come
+	private static final long QUIET_MILLIS = 300;
+
+	private ChangeRecorder mRecorder;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mRecorder = ChangeRecorder.register(MockModel.class);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		mRecorder.unregister();
+		new Delete().from(MockModel.class).execute();
+		super.tearDown();
+	}
+
+	public void testCommitNotifiesOncePerModel() throws Exception {
+		final MockModel first = new MockModel();
+		final MockModel second = new MockModel();
+
+		ActiveAndroid.beginTransaction();
+		try {
+			first.save();
+			second.save();
+			first.save();
+
+			SystemClock.sleep(QUIET_MILLIS);
+			assertTrue(mRecorder.getChanges().isEmpty());
+
+			ActiveAndroid.setTransactionSuccessful();
+		}
+		finally {
+			ActiveAndroid.endTransaction();
+		}
+
+		assertChanges(createUri(first), createUri(second));
+	}
+
+	public void testRollbackNotifiesNothing() throws Exception {
+		ActiveAndroid.beginTransaction();
+		try {
+			new MockModel().save();
+			new MockModel().save();
+		}
+		finally {
+			ActiveAndroid.endTransaction();
+		}
+
+		SystemClock.sleep(QUIET_MILLIS);
+		assertTrue(mRecorder.getChanges().isEmpty());
+	}
+
+	public void testSavepointRollbackDropsOnlyItsChanges() throws Exception {
+		final MockModel outer = new MockModel();
+		final MockModel inner = new MockModel();
+
+		ActiveAndroid.beginTransaction();
+		try {
+			outer.save();
+
+			ActiveAndroid.beginTransaction();
+			try {
+				inner.save();
+			}
+			finally {
+				ActiveAndroid.endTransaction();
+			}
+
+			ActiveAndroid.setTransactionSuccessful();
+		}
+		finally {
+			ActiveAndroid.endTransaction();
+		}
+
+		assertChanges(createUri(outer));
+	}
+
+	public void testNotifyByTable() throws Exception {
+		ActiveAndroid.dispose();
+		ActiveAndroid.initialize(new Configuration.Builder(getContext())
+				.setNotifyByTable(true)
+				.create());
+
+		ActiveAndroid.beginTransaction();
+		try {
+			new MockModel().save();
+			new MockModel().save();
+			ActiveAndroid.setTransactionSuccessful();
+		}
+		finally {
+			ActiveAndroid.endTransaction();
+		}
+
+		assertChanges(ContentProvider.createUri(MockModel.class, null));
+	}
+
+	/**
+	 * Wait for the expected notifications and check no others follow.
+	 */
+	private void assertChanges(Uri... expected) throws InterruptedException {
+		assertTrue(mRecorder.awaitChanges(expected.length, TIMEOUT));
+		SystemClock.sleep(QUIET_MILLIS);
+
+		final Set<Uri> expectedSet = new HashSet<Uri>();
+		for (Uri uri : expected) {
+			expectedSet.add(uri);
+		}
+
+		assertEquals(expected.length, mRecorder.getChanges().size());
+		assertEquals(expectedSet, new HashSet<Uri>(mRecorder.getChanges()));
+	}
+
+	private static Uri createUri(MockModel model) {
+		return ContentProvider.createUri(MockModel.class, model.getId());
+	}
+}
@@ -0,0 +1,48 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.activeandroid.serializer.TypeSerializer;
+
+/**
+ * Stores a {@link SerializedEnumModel.Priority} as its ordinal instead of its name.
+ */
+public final class PrioritySerializer extends TypeSerializer {
+	public Class<?> getDeserializedType() {
+		return SerializedEnumModel.Priority.class;
+	}
+
+	public Class<?> getSerializedType() {
+		return Integer.class;
+	}
+
+	public Integer serialize(Object data) {
+		if (data == null) {
+			return null;
+		}
+
+		return ((SerializedEnumModel.Priority) data).ordinal();
+	}
+
+	public SerializedEnumModel.Priority deserialize(Object data) {
+		if (data == null) {
+			return null;
+		}
+
+		return SerializedEnumModel.Priority.values()[((Number) data).intValue()];
+	}
+}
@@ -0,0 +1,40 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.activeandroid.Model;
+import com.activeandroid.annotation.Column;
+import com.activeandroid.annotation.Table;
+
+/**
+ * Computed is no column of the table, queries select it, see ModelTest.
+ */
+@Table(name = "ReadOnlyModel")
+public class ReadOnlyModel extends Model {
+	@Column(name = "Name")
+	public String name;
+
+	@Column(name = "Computed", readOnly = true)
+	public String computed;
+
+	public ReadOnlyModel() {
+	}
+
+	public ReadOnlyModel(String name) {
+		this.name = name;
+	}
+}
@@ -0,0 +1,76 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.activeandroid.Cache;
+import com.activeandroid.Model;
+import com.activeandroid.Ref;
+
+public class RefTest extends ActiveAndroidTestCase {
+	public void testLoadsOnFirstGet() {
+		final MockModel model = new MockModel();
+		model.save();
+
+		final Ref<MockModel> ref = Ref.to(MockModel.class, model.getId());
+		assertFalse(ref.isLoaded());
+		assertEquals(model.getId(), ref.getId());
+
+		final MockModel loaded = ref.get();
+		assertTrue(ref.isLoaded());
+		assertEquals(model.getId(), loaded.getId());
+		assertSame(loaded, ref.get());
+
+		model.delete();
+	}
+
+	public void testOfTracksModelId() {
+		final MockModel model = new MockModel();
+		final Ref<MockModel> ref = Ref.of(model);
+
+		assertTrue(ref.isLoaded());
+		assertNull(ref.getId());
+
+		model.save();
+		assertEquals(model.getId(), ref.getId());
+		assertEquals(Ref.to(MockModel.class, model.getId()), ref);
+
+		model.delete();
+	}
+
+	public void testColumnRoundTrip() {
+		final MockModel parent = new MockModel();
+		parent.save();
+
+		final ChildModel child = new ChildModel();
+		child.parentRef = Ref.of(parent);
+		child.save();
+
+		// Read back from the row, not from the entity cache
+		Cache.removeEntity(child);
+		final ChildModel loaded = Model.load(ChildModel.class, child.getId());
+		assertNotSame(child, loaded);
+		assertNotNull(loaded.parentRef);
+		assertEquals(parent.getId(), loaded.parentRef.getId());
+		assertEquals(MockModel.class, loaded.parentRef.getType());
+		assertFalse(loaded.parentRef.isLoaded());
+		assertEquals(parent.getId(), loaded.parentRef.get().getId());
+		assertTrue(loaded.parentRef.isLoaded());
+
+		loaded.delete();
+		parent.delete();
+	}
+}
@@ -0,0 +1,166 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Select;
+
+/**
+ * Opens transactions from 1, 2, 4 and 8 threads, with and without writing a row in
+ * each. Throughput per thread count is logged under the "TransactionContention"
+ * tag.
+ */
+public class TransactionContentionTest extends ActiveAndroidTestCase {
+	private static final int BOOKKEEPINGS_PER_THREAD = 100000;
+	private static final int WRITES_PER_THREAD = 200;
+	private static final long TIMEOUT = 5000;
+	private static final long RELEASE_MILLIS = 200;
+
+	@Override
+	protected void tearDown() throws Exception {
+		new Delete().from(MockModel.class).execute();
+		super.tearDown();
+	}
+
+	public void testConcurrentBookkeeping() throws Exception {
+		for (int threads = 1; threads <= 8; threads *= 2) {
+			final long elapsed = run(threads, BOOKKEEPINGS_PER_THREAD, false);
+			final long transactions = (long) threads * BOOKKEEPINGS_PER_THREAD;
+
+			Log.i("TransactionContention", String.format("%d threads: %d tracked transactions in %d ms",
+					threads, transactions, elapsed));
+		}
+	}
+
+	public void testConcurrentWrites() throws Exception {
+		for (int threads = 1; threads <= 8; threads *= 2) {
+			final long elapsed = run(threads, WRITES_PER_THREAD, true);
+			final long transactions = (long) threads * WRITES_PER_THREAD;
+
+			Log.i("TransactionContention", String.format("%d threads: %d write transactions in %d ms",
+					threads, transactions, elapsed));
+		}
+	}
+
+	public void testYieldWaitsForReleaseRequest() throws Exception {
+		final MockModel model = new MockModel();
+		final CountDownLatch requested = new CountDownLatch(1);
+		final AtomicLong releasedAt = new AtomicLong();
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+		ActiveAndroid.beginTransaction();
+		try {
+			model.save();
+
+			new Thread() {
+				@Override
+				public void run() {
+					ActiveAndroid.beginReleaseTransaction();
+					requested.countDown();
+					try {
+						// Visible only once the writer has committed for us
+						assertTrue(new Select().from(MockModel.class).where("Id = ?", model.getId()).exists());
+						SystemClock.sleep(RELEASE_MILLIS);
+					}
+					catch (Throwable e) {
+						error.set(e);
+					}
+					finally {
+						releasedAt.set(SystemClock.uptimeMillis());
+						ActiveAndroid.endReleaseTransaction();
+					}
+				}
+			}.start();
+
+			assertTrue(requested.await(TIMEOUT, TimeUnit.MILLISECONDS));
+			ActiveAndroid.yieldTransaction();
+
+			// Woken by the request ending, not before
+			assertNull(error.get());
+			assertTrue(releasedAt.get() > 0);
+
+			ActiveAndroid.setTransactionSuccessful();
+		}
+		finally {
+			ActiveAndroid.endTransaction();
+		}
+	}
+
+	/**
+	 * @param write open database transactions and save a model in each, instead of
+	 *        only running the bookkeeping
+	 */
+	private long run(int threads, final int transactions, final boolean write) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicInteger failures = new AtomicInteger();
+
+		for (int t = 0; t < threads; t++) {
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < transactions; i++) {
+							if (write) {
+								ActiveAndroid.beginTransaction();
+								try {
+									new MockModel().save();
+									ActiveAndroid.setTransactionSuccessful();
+								}
+								finally {
+									ActiveAndroid.endTransaction();
+								}
+							}
+							else {
+								// Rolled back, so nothing is dispatched
+								Cache.beginTransaction();
+								Cache.notifyChange(MockModel.class, (long) i);
+								Cache.endTransaction();
+							}
+						}
+					}
+					catch (Exception e) {
+						failures.incrementAndGet();
+					}
+					finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+
+		final long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		final long elapsed = (System.nanoTime() - begin) / 1000000;
+
+		assertEquals(0, failures.get());
+		return elapsed;
+	}
+}
@@ -0,0 +1,175 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.database.sqlite.SQLiteDatabaseLockedException;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.Model;
+import com.activeandroid.TransactionStats;
+import com.activeandroid.query.Select;
+
+public class TransactionTest extends ActiveAndroidTestCase {
+	public void testNestedRunRollsBackOnlyItself() {
+		final MockModel outer = new MockModel();
+		final MockModel inner = new MockModel();
+		final TransactionStats before = ActiveAndroid.getTransactionStats();
+
+		final Long id = ActiveAndroid.runInTransaction(new Callable<Long>() {
+			@Override
+			public Long call() {
+				outer.save();
+				try {
+					ActiveAndroid.runInTransaction(new Callable<Void>() {
+						@Override
+						public Void call() {
+							inner.save();
+							throw new IllegalStateException();
+						}
+					});
+					fail("The inner exception is rethrown");
+				}
+				catch (IllegalStateException e) {
+				}
+				return outer.getId();
+			}
+		});
+
+		assertEquals(outer.getId(), id);
+		assertTrue(exists(outer));
+		assertFalse(exists(inner));
+
+		final TransactionStats after = ActiveAndroid.getTransactionStats();
+		assertEquals(before.getTransactionCount() + 2, after.getTransactionCount());
+		assertEquals(before.getRollbackCount() + 1, after.getRollbackCount());
+
+		outer.delete();
+	}
+
+	public void testNestedTransactionRollsBackOnlyItself() {
+		final MockModel outer = new MockModel();
+		final MockModel inner = new MockModel();
+		final MockModel sibling = new MockModel();
+
+		ActiveAndroid.beginTransaction();
+		try {
+			outer.save();
+
+			ActiveAndroid.beginTransaction();
+			try {
+				inner.save();
+			}
+			finally {
+				ActiveAndroid.endTransaction();
+			}
+
+			ActiveAndroid.beginTransaction();
+			try {
+				sibling.save();
+				ActiveAndroid.setTransactionSuccessful();
+			}
+			finally {
+				ActiveAndroid.endTransaction();
+			}
+
+			ActiveAndroid.setTransactionSuccessful();
+		}
+		finally {
+			ActiveAndroid.endTransaction();
+		}
+
+		assertTrue(exists(outer));
+		assertFalse(exists(inner));
+		assertTrue(exists(sibling));
+
+		outer.delete();
+		sibling.delete();
+	}
+
+	public void testRunRollsBackWhenBodyThrows() {
+		final MockModel model = new MockModel();
+		try {
+			ActiveAndroid.runInTransaction(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					model.save();
+					throw new Exception();
+				}
+			});
+			fail("Checked exceptions are wrapped");
+		}
+		catch (RuntimeException e) {
+			assertEquals(Exception.class, e.getCause().getClass());
+		}
+
+		assertFalse(exists(model));
+	}
+
+	public void testRunDoesNotRetryBody() {
+		final AtomicInteger calls = new AtomicInteger();
+		final long retries = ActiveAndroid.getTransactionStats().getRetryCount();
+		try {
+			ActiveAndroid.runInTransaction(new Callable<Void>() {
+				@Override
+				public Void call() {
+					calls.incrementAndGet();
+					throw new SQLiteDatabaseLockedException();
+				}
+			});
+			fail("A lock error of the body is thrown");
+		}
+		catch (SQLiteDatabaseLockedException e) {
+		}
+
+		assertEquals(1, calls.get());
+		assertEquals(retries, ActiveAndroid.getTransactionStats().getRetryCount());
+	}
+
+	public void testRollbackEvictsChangedModels() {
+		final MockModel model = new MockModel();
+		model.save();
+		Cache.addEntity(model);
+
+		ActiveAndroid.beginTransaction();
+		try {
+			ActiveAndroid.beginTransaction();
+			try {
+				model.save();
+			}
+			finally {
+				ActiveAndroid.endTransaction();
+			}
+
+			assertNull(Cache.getEntity(MockModel.class, model.getId()));
+			ActiveAndroid.setTransactionSuccessful();
+		}
+		finally {
+			ActiveAndroid.endTransaction();
+		}
+
+		assertTrue(exists(model));
+		model.delete();
+	}
+
+	private static boolean exists(Model model) {
+		return new Select().from(MockModel.class).where("Id = ?", model.getId()).exists();
+	}
+}
@@ -0,0 +1,76 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Build;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.Configuration;
+import com.activeandroid.query.Select;
+
+public class WriteAheadLoggingTest extends ActiveAndroidTestCase {
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		ActiveAndroid.dispose();
+		ActiveAndroid.initialize(new Configuration.Builder(getContext())
+				.setWriteAheadLogging(true)
+				.create());
+	}
+
+	public void testQueryRunsDuringWriteTransaction() throws Exception {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+			assertFalse(Cache.isWriteAheadLogging());
+			return;
+		}
+		assertTrue(Cache.isWriteAheadLogging());
+
+		final MockModel committed = new MockModel();
+		committed.save();
+
+		ActiveAndroid.beginTransaction();
+		try {
+			final MockModel uncommitted = new MockModel();
+			uncommitted.save();
+
+			final FutureTask<Long> count = new FutureTask<Long>(new Callable<Long>() {
+				@Override
+				public Long call() {
+					return new Select().from(MockModel.class)
+							.where("Id IN (?, ?)", committed.getId(), uncommitted.getId())
+							.count();
+				}
+			});
+			new Thread(count).start();
+
+			// Done while this thread still holds the transaction, without its row
+			assertEquals(1L, (long) count.get(5, TimeUnit.SECONDS));
+		}
+		finally {
+			// Rolled back
+			ActiveAndroid.endTransaction();
+		}
+
+		committed.delete();
+	}
+}
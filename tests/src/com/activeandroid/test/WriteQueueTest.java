@@ -0,0 +1,131 @@
+package com.activeandroid.test;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Configuration;
+import com.activeandroid.WriteQueue;
+
+public class WriteQueueTest extends ActiveAndroidTestCase {
+	private static final long TIMEOUT = 10000;
+
+	public void testErrorFailsOnlyItsOperation() throws Exception {
+		final Future<Void> failed = WriteQueue.submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				throw new AssertionError("Thrown by the operation");
+			}
+		});
+
+		try {
+			failed.get(TIMEOUT, TimeUnit.MILLISECONDS);
+			fail("An operation throwing an Error completed");
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof AssertionError);
+		}
+
+		// The writer survived it
+		final MockModel model = new MockModel();
+		final Long id = model.saveAsync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+		assertEquals(model.getId(), id);
+
+		model.delete();
+	}
+
+	public void testGroupCommitWaitsForWindow() throws Exception {
+		initialize(500, 100);
+
+		final long start = SystemClock.uptimeMillis();
+		final MockModel model = new MockModel();
+		model.save();
+
+		// save() returned once written, the commit waits for the window to close
+		WriteQueue.sync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+		assertTrue(SystemClock.uptimeMillis() - start >= 500);
+
+		model.delete();
+	}
+
+	public void testGroupCommitStopsAtSize() throws Exception {
+		initialize((int) TIMEOUT * 2, 3);
+
+		final Future<Void> first = WriteQueue.submit(new NoOp());
+		final Future<Void> second = WriteQueue.submit(new NoOp());
+		final Future<Void> third = WriteQueue.submit(new NoOp());
+
+		// Well before the window closes
+		third.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		assertTrue(first.isDone());
+		assertTrue(second.isDone());
+	}
+
+	public void testSyncReportsFailedBatch() throws Exception {
+		// Another connection holding the lock makes the next batch fail to begin
+		final SQLiteDatabase other = SQLiteDatabase.openDatabase(ActiveAndroid.getDatabase().getPath(), null,
+				SQLiteDatabase.OPEN_READWRITE);
+		try {
+			other.beginTransaction();
+			try {
+				try {
+					WriteQueue.submit(new NoOp()).get(TIMEOUT, TimeUnit.MILLISECONDS);
+					fail("A batch committed while another connection held the lock");
+				}
+				catch (ExecutionException e) {
+				}
+			}
+			finally {
+				other.endTransaction();
+			}
+		}
+		finally {
+			other.close();
+		}
+
+		try {
+			WriteQueue.sync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+			fail("sync() didn't report the failed batch");
+		}
+		catch (ExecutionException e) {
+		}
+
+		// Reported once
+		WriteQueue.sync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	private void initialize(int groupCommitWindow, int groupCommitSize) {
+		ActiveAndroid.dispose();
+		ActiveAndroid.initialize(new Configuration.Builder(getContext())
+				.setGroupCommit(groupCommitWindow, groupCommitSize)
+				.create());
+	}
+
+	private static final class NoOp implements Callable<Void> {
+		@Override
+		public Void call() {
+			return null;
+		}
+	}
+}
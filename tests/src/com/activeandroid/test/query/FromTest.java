@@ -16,11 +16,30 @@ package com.activeandroid.test.query;
  * limitations under the License.
  */
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import android.database.Cursor;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.ColumnInfo;
 import com.activeandroid.Model;
+import com.activeandroid.TableInfo;
 import com.activeandroid.annotation.Table;
+import com.activeandroid.query.Delete;
 import com.activeandroid.query.From;
+import com.activeandroid.query.ModelIterator;
+import com.activeandroid.query.PreparedQuery;
+import com.activeandroid.query.RowMapper;
 import com.activeandroid.query.Select;
+import com.activeandroid.test.BinderModel;
+import com.activeandroid.test.ChildModel;
+import com.activeandroid.test.MismatchedModel;
 import com.activeandroid.test.MockModel;
+import com.novoda.notils.cursor.CursorList;
 
 public class FromTest extends SqlableTestCase {
 	private static final String SELECT_PREFIX = "SELECT ALL * FROM MockModel ";
@@ -84,6 +103,182 @@ public class FromTest extends SqlableTestCase {
 				query);
 	}
 	
+	public void testBindArgumentsKeepTypes() {
+		final MockModel model = new MockModel();
+		model.save();
+
+		final From query = from().where("Id = ? AND a = ? AND b = ? AND c = ? AND d IS ?", 5, 1.5f, true, model, null);
+		assertArrayEquals(query.getBindArguments(), 5L, 1.5d, 1L, model.getId(), null);
+
+		model.delete();
+	}
+
+	public void testPrepare() {
+		final MockModel model = new MockModel();
+		model.save();
+
+		final PreparedQuery<MockModel> query = new Select().from(MockModel.class).where("Id = ?").limit(1).prepare();
+		assertEquals("SELECT * FROM MockModel WHERE Id = ? LIMIT 1", query.getSql());
+		assertEquals(model.getId(), query.executeSingle(model.getId()).getId());
+		assertNull(query.executeSingle(-1L));
+
+		model.delete();
+	}
+
+	public void testIterate() {
+		final List<MockModel> models = new ArrayList<MockModel>();
+		for (int i = 0; i < 5; i++) {
+			models.add(new MockModel());
+		}
+		Model.saveAll(models);
+
+		final long first = models.get(0).getId();
+		final ModelIterator<MockModel> iterator = new Select().from(MockModel.class).where("Id >= ?", first).iterate(2);
+		for (MockModel model : models) {
+			assertTrue(iterator.hasNext());
+			assertEquals(model.getId(), iterator.next().getId());
+		}
+		assertFalse(iterator.hasNext());
+
+		final int[] count = new int[1];
+		new Select().from(MockModel.class).where("Id >= ?", first).forEach(new From.ModelCallback<MockModel>() {
+			@Override
+			public boolean onModel(MockModel model) {
+				return ++count[0] < 3;
+			}
+		});
+		assertEquals(3, count[0]);
+
+		final MockModel recycled = new MockModel();
+		final ModelIterator<MockModel> recycling = new Select().from(MockModel.class).where("Id >= ?", first)
+				.<MockModel>iterate().recycle(recycled);
+		for (MockModel model : models) {
+			final MockModel next = recycling.next();
+			assertSame(recycled, next);
+			assertEquals(model.getId(), next.getId());
+		}
+		recycling.close();
+
+		try {
+			new Select().from(MockModel.class).iterate(0);
+			fail("iterate() accepted a page size of 0");
+		}
+		catch (IllegalArgumentException e) {
+		}
+
+		Model.deleteAll(models);
+	}
+
+	public void testKeyset() {
+		From query = from().after("Date", 5, 10);
+		assertSqlEquals(SELECT_PREFIX + "WHERE (Date >= ? AND (Date > ? OR MockModel.Id > ?)) "
+				+ "ORDER BY Date ASC, MockModel.Id ASC", query);
+		assertArrayEquals(query.getArguments(), "5", "5", "10");
+
+		query = from().where("Id != ?", 1).before("Date", 5, 10).limit(20);
+		assertSqlEquals(SELECT_PREFIX + "WHERE (Id != ?) AND (Date <= ? AND (Date < ? OR MockModel.Id < ?)) "
+				+ "ORDER BY Date DESC, MockModel.Id DESC LIMIT 20", query);
+		assertArrayEquals(query.getArguments(), "1", "5", "5", "10");
+
+		try {
+			from().offset(10).after("Date", 5, 10);
+			fail("after() accepted a query with an offset");
+		}
+		catch (IllegalStateException e) {
+		}
+
+		try {
+			from().before("Date", 5, 10).offset(10);
+			fail("offset() accepted a keyset query");
+		}
+		catch (IllegalStateException e) {
+		}
+
+		try {
+			from().page("Date", 0);
+			fail("page() accepted a page size of 0");
+		}
+		catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testScalarTerminals() {
+		final List<MockModel> models = new ArrayList<MockModel>();
+		for (int i = 0; i < 3; i++) {
+			models.add(new MockModel());
+		}
+		Model.saveAll(models);
+
+		final long first = models.get(0).getId();
+		final long last = models.get(2).getId();
+		assertEquals(3, from().where("Id >= ?", first).count());
+		assertTrue(from().where("Id = ?", last).exists());
+		assertEquals((double) last, from().where("Id >= ?", first).max("Id"));
+		assertEquals((double) first + last, from().where("Id IN (?, ?)", first, last).sum("Id"));
+
+		final long[] ids = from().where("Id >= ?", first).orderBy("Id").pluckLongs("Id");
+		assertEquals(3, ids.length);
+		assertEquals(first, ids[0]);
+		assertEquals(last, ids[2]);
+
+		assertEquals(0, from().where("Id < 0").count());
+		assertFalse(from().where("Id < 0").exists());
+		assertTrue(Double.isNaN(from().where("Id < 0").avg("Id")));
+
+		Model.deleteAll(models);
+	}
+
+	public void testExecuteAs() {
+		final MockModel model = new MockModel();
+		model.save();
+
+		final List<IdRow> rows = new Select("Id").from(MockModel.class).where("Id = ?", model.getId())
+				.executeAs(IdRow.class);
+		assertEquals(1, rows.size());
+		assertEquals(model.getId().longValue(), rows.get(0).id);
+
+		final List<Long> ids = new Select("Id").from(MockModel.class).where("Id = ?", model.getId())
+				.executeAs(new RowMapper<Long>() {
+					@Override
+					public Long map(Cursor cursor) {
+						return cursor.getLong(0);
+					}
+				});
+		assertEquals(model.getId(), ids.get(0));
+
+		// The readable constructor is picked, and Date goes through its TypeSerializer
+		final List<DateRow> dates = new Select("Id").from(MockModel.class).where("Id = ?", model.getId())
+				.executeAs(DateRow.class);
+		assertEquals(model.getId().longValue(), dates.get(0).date.getTime());
+
+		try {
+			new Select("Id").from(MockModel.class).where("Id = ?", model.getId()).executeAs(ThreadRow.class);
+			fail("executeAs() accepted a class without a readable constructor");
+		}
+		catch (IllegalArgumentException e) {
+		}
+
+		model.delete();
+	}
+
+	public void testExecuteAsync() throws Exception {
+		final MockModel model = new MockModel();
+		final Future<Long> saved = model.saveAsync();
+		final Long id = saved.get();
+		assertEquals(model.getId(), id);
+		assertTrue(from().where("Id = ?", id).exists());
+
+		new Delete().from(MockModel.class).where("Id = ?", id).executeAsync().get();
+		assertFalse(from().where("Id = ?", id).exists());
+
+		try {
+			from().executeAsync();
+			fail("Select queries can't be queued");
+		}
+		catch (IllegalStateException e) {
+		}
+	}
+
 	public void testSingleJoin() {
 		assertSqlEquals(SELECT_PREFIX + "JOIN JoinModel ON MockModel.Id = JoinModel.Id",
 				from().join(JoinModel.class).on("MockModel.Id = JoinModel.Id"));
@@ -152,10 +347,196 @@ public class FromTest extends SqlableTestCase {
 					.as("a"));
 	}
 	
+	public void testIncludeRequiresModelColumn() {
+		try {
+			from().include("Missing");
+			fail("include() accepted a column MockModel doesn't have");
+		}
+		catch (IllegalArgumentException e) {
+		}
+
+		try {
+			from().include(JoinModel.class);
+			fail("include() accepted a model MockModel doesn't reference");
+		}
+		catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testIncludePrefetchesReferencedModels() {
+		final List<MockModel> parents = new ArrayList<MockModel>();
+		final List<ChildModel> children = new ArrayList<ChildModel>();
+		for (int i = 0; i < 20; i++) {
+			final MockModel parent = new MockModel();
+			parents.add(parent);
+			children.add(new ChildModel(parent));
+		}
+		Model.saveAll(parents);
+		Model.saveAll(children);
+		final From query = new Select().from(ChildModel.class).where("Id >= ?", children.get(0).getId()).orderBy("Id");
+
+		// Without include() each row misses the cache and queries its parent
+		ActiveAndroid.clearCache();
+		long hits = Cache.getStats(MockModel.class).getHitCount();
+		assertParents(parents, query.<ChildModel>execute());
+		assertEquals(hits, Cache.getStats(MockModel.class).getHitCount());
+
+		// With it the parents are loaded up front and every row finds its own
+		ActiveAndroid.clearCache();
+		hits = Cache.getStats(MockModel.class).getHitCount();
+		assertParents(parents, query.include("Parent").<ChildModel>execute());
+		assertEquals(hits + parents.size(), Cache.getStats(MockModel.class).getHitCount());
+
+		Model.deleteAll(children);
+		Model.deleteAll(parents);
+	}
+
+	public void testEagerHydratesJoinedModels() {
+		final List<MockModel> parents = new ArrayList<MockModel>();
+		final List<ChildModel> children = new ArrayList<ChildModel>();
+		for (int i = 0; i < 5; i++) {
+			final MockModel parent = new MockModel();
+			parents.add(parent);
+			children.add(new ChildModel(parent));
+		}
+		Model.saveAll(parents);
+		Model.saveAll(children);
+
+		ActiveAndroid.clearCache();
+		final CursorList<ChildModel> loaded = new Select().from(ChildModel.class).as("c")
+				.join(MockModel.class).as("p").on("c.Parent = p.Id")
+				.where("c.Id >= ?", children.get(0).getId())
+				.orderBy("c.Id")
+				.eager()
+				.execute();
+		try {
+			// The rows are read, a query per parent would now find nothing
+			assertEquals(children.size(), loaded.size());
+			Model.deleteAll(children);
+			Model.deleteAll(parents);
+
+			for (int i = 0; i < children.size(); i++) {
+				final MockModel parent = loaded.get(i).parent;
+				assertNotNull(parent);
+				assertEquals(parents.get(i).getId(), parent.getId());
+				assertSame(parent, Cache.getEntity(MockModel.class, parent.getId()));
+			}
+		}
+		finally {
+			loaded.close();
+		}
+	}
+
+	public void testEagerProjection() {
+		assertSqlEquals("SELECT a.*, b.Id AS _1_Id FROM MockModel AS a JOIN MockModel AS b ON a.Id = b.Id",
+				new Select().from(MockModel.class).as("a")
+					.join(MockModel.class).as("b").on("a.Id = b.Id")
+					.eager());
+
+		try {
+			new Select("Id").from(MockModel.class).eager().toSql();
+			fail("eager() accepted a Select with columns");
+		}
+		catch (IllegalStateException e) {
+		}
+	}
+
+	public void testColumnPlan() {
+		final TableInfo tableInfo = Cache.getTableInfo(BinderModel.class);
+		final List<ColumnInfo> columns = tableInfo.getColumnInfos();
+		final String[] binderColumns = tableInfo.getBinder().getColumnNames();
+
+		// Id first, then the binder's order
+		assertEquals("Id", columns.get(0).getName());
+		assertEquals(binderColumns.length + 1, columns.size());
+		for (int i = 0; i < binderColumns.length; i++) {
+			assertEquals(binderColumns[i], columns.get(i + 1).getName());
+		}
+
+		final Cursor cursor = ActiveAndroid.getDatabase().rawQuery("SELECT String, Id FROM BinderModel", null);
+		try {
+			final int[] indices = tableInfo.getColumnIndices(cursor);
+			assertEquals(1, indices[0]);
+			for (int i = 1; i < indices.length; i++) {
+				assertEquals(columns.get(i).getName().equals("String") ? 0 : -1, indices[i]);
+			}
+		}
+		finally {
+			cursor.close();
+		}
+	}
+
+	public void testNarrowProjectionLeavesOtherFields() {
+		final BinderModel model = new BinderModel();
+		model.string = "string";
+		model.intPrimitive = 42;
+		model.save();
+
+		final MismatchedModel unbound = new MismatchedModel();
+		unbound.setName("name");
+		unbound.save();
+		ActiveAndroid.clearCache();
+
+		// Through the binder
+		final BinderModel narrow = new Select("Id", "String").from(BinderModel.class)
+				.where("Id = ?", model.getId()).executeSingle();
+		assertEquals(model.getId(), narrow.getId());
+		assertEquals("string", narrow.string);
+		assertEquals(0, narrow.intPrimitive);
+		// Incomplete, so not cached
+		assertNull(Cache.getEntity(BinderModel.class, model.getId()));
+
+		// Through reflection
+		final MismatchedModel idOnly = new Select("Id").from(MismatchedModel.class)
+				.where("Id = ?", unbound.getId()).executeSingle();
+		assertEquals(unbound.getId(), idOnly.getId());
+		assertNull(idOnly.getName());
+
+		model.delete();
+		unbound.delete();
+	}
+
+	private static void assertParents(List<MockModel> parents, CursorList<ChildModel> children) {
+		try {
+			assertEquals(parents.size(), children.size());
+			for (int i = 0; i < parents.size(); i++) {
+				assertEquals(parents.get(i).getId(), children.get(i).parent.getId());
+			}
+		}
+		finally {
+			children.close();
+		}
+	}
+
 	private From from() {
 		return new Select().all().from(MockModel.class);
 	}
 	
+	private static class IdRow {
+		final long id;
+
+		IdRow(long id) {
+			this.id = id;
+		}
+	}
+
+	private static class DateRow {
+		final Date date;
+
+		DateRow(Thread thread) {
+			throw new AssertionError("Thread can't be read from a column");
+		}
+
+		DateRow(Date date) {
+			this.date = date;
+		}
+	}
+
+	private static class ThreadRow {
+		ThreadRow(Thread thread) {
+		}
+	}
+
 	@Table(name = "JoinModel")
 	private static class JoinModel extends Model {
 	}